@@ -1,5 +1,6 @@
 package aws.cfn.codegen;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -24,19 +25,48 @@ public class CfnSpecification {
     private Map<String, ResourceType> propertyTypes = new HashMap<>(256);
     private Map<String, ResourceType> resourceTypes = new HashMap<>(256);
 
+    /**
+     * Names of the property types a filter skipped while loading. They are not in the property
+     * types, references to them are still valid.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Set<String> skippedPropertyTypes = new HashSet<>();
+
+    /**
+     * @return the names of the property types, including skipped ones
+     */
+    @JsonIgnore
+    public Set<String> getPropertyTypeNames() {
+        if (skippedPropertyTypes.isEmpty()) {
+            return propertyTypes.keySet();
+        }
+        Set<String> names = new HashSet<>(propertyTypes.keySet());
+        names.addAll(skippedPropertyTypes);
+        return names;
+    }
+
     public void validate() throws CfnSpecificationException {
-        resourceTypes.forEach(
-            (name, type) -> {
-                type.getProperties().forEach(
-                    (propName, propType) -> {
-                        propType.getComplexType().ifPresent(cplx -> {
-                            if (!propertyTypes.containsKey(name + "." + cplx) &&
-                                !propertyTypes.containsKey(cplx)) {
-                                throw new CfnSpecificationException(cplx + " referenced but not defined in " + name);
-                            }
-                        });
+        Set<String> propertyNames = getPropertyTypeNames();
+        resourceTypes.forEach((name, type) -> validate(name, type, propertyNames));
+    }
+
+    /**
+     * Checks that every complex property of the resource type refers to a known property type,
+     * either namespaced by the resource or defined at the top level.
+     */
+    public static void validate(String name,
+                                ResourceType type,
+                                Set<String> propertyNames) throws CfnSpecificationException {
+        type.getProperties().forEach(
+            (propName, propType) -> {
+                propType.getComplexType().ifPresent(cplx -> {
+                    if (!propertyNames.contains(name + "." + cplx) &&
+                        !propertyNames.contains(cplx)) {
+                        throw new CfnSpecificationException(cplx + " referenced but not defined in " + name);
                     }
-                );
+                });
             }
         );
     }
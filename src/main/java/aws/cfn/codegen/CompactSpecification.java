@@ -0,0 +1,338 @@
+package aws.cfn.codegen;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable, compact form of a {@link CfnSpecification}. Types are held in arrays sorted by name
+ * and looked up by binary search, properties and attributes are flat records with primitive and
+ * update types coded as enums and boolean flags packed into a byte. Names and documentation URL
+ * prefixes come from a {@link StringPool} shared by all specifications built with it.
+ * <p>
+ * {@link #asSpecification()} exposes the model as a read-only {@link CfnSpecification} whose types
+ * are materialized on access and not retained, so it can be handed to code written against the
+ * regular model.
+ */
+public final class CompactSpecification {
+
+    public enum Primitive {
+        String, Long, Integer, Double, Boolean, Timestamp, Json, Number, Float;
+
+        static Primitive of(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return valueOf(value);
+            }
+            catch (IllegalArgumentException e) {
+                throw new CfnSpecificationException("Unknown primitive type " + value, e);
+            }
+        }
+    }
+
+    public enum Update {
+        Mutable, Immutable, Conditional;
+
+        static Update of(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return valueOf(value);
+            }
+            catch (IllegalArgumentException e) {
+                throw new CfnSpecificationException("Unknown update type " + value, e);
+            }
+        }
+    }
+
+    private static final byte DUPLICATES_SET = 0x1;
+    private static final byte DUPLICATES = 0x2;
+    private static final byte REQUIRED_SET = 0x4;
+    private static final byte REQUIRED = 0x8;
+
+    /**
+     * A property or attribute of a type. Attributes never carry documentation, update type or flags.
+     */
+    public static final class Member {
+        private final String name;
+        private final String type;
+        private final String itemType;
+        private final Primitive primitiveType;
+        private final Primitive primitiveItemType;
+        private final String documentationBase;
+        private final String documentationPath;
+        private final Update updateType;
+        private final byte flags;
+
+        private Member(String name, AttributeType attr, StringPool pool) {
+            this.name = pool.intern(name);
+            this.type = pool.intern(attr.getType());
+            this.itemType = pool.intern(attr.getItemType());
+            this.primitiveType = Primitive.of(attr.getPrimitiveType());
+            this.primitiveItemType = Primitive.of(attr.getPrimitiveItemType());
+            if (attr instanceof PropertyType) {
+                PropertyType prop = (PropertyType) attr;
+                this.documentationBase = pool.urlBase(prop.getDocumentation());
+                this.documentationPath = pool.urlPath(prop.getDocumentation());
+                this.updateType = Update.of(prop.getUpdateType());
+                this.flags = (byte)(flags(prop.getDuplicatesAllowed(), DUPLICATES_SET, DUPLICATES) |
+                    flags(prop.getRequired(), REQUIRED_SET, REQUIRED));
+            }
+            else {
+                this.documentationBase = null;
+                this.documentationPath = null;
+                this.updateType = null;
+                this.flags = 0;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDocumentation() {
+            return join(documentationBase, documentationPath);
+        }
+
+        public Update getUpdateType() {
+            return updateType;
+        }
+
+        public Boolean getRequired() {
+            return flag(REQUIRED_SET, REQUIRED);
+        }
+
+        public Boolean getDuplicatesAllowed() {
+            return flag(DUPLICATES_SET, DUPLICATES);
+        }
+
+        private Boolean flag(byte set, byte value) {
+            return (flags & set) == 0 ? null : (flags & value) != 0;
+        }
+
+        private void fill(AttributeType attr) {
+            attr.setType(type);
+            attr.setItemType(itemType);
+            attr.setPrimitiveType(primitiveType != null ? primitiveType.name() : null);
+            attr.setPrimitiveItemType(primitiveItemType != null ? primitiveItemType.name() : null);
+        }
+
+        PropertyType toPropertyType() {
+            PropertyType prop = new PropertyType();
+            fill(prop);
+            prop.setDocumentation(getDocumentation());
+            prop.setUpdateType(updateType != null ? updateType.name() : null);
+            prop.setRequired(getRequired());
+            prop.setDuplicatesAllowed(getDuplicatesAllowed());
+            return prop;
+        }
+
+        AttributeType toAttributeType() {
+            AttributeType attr = new AttributeType();
+            fill(attr);
+            return attr;
+        }
+    }
+
+    /**
+     * A resource or property type. Members keep the order they had in the specification.
+     */
+    public static final class Type {
+        private final String documentationBase;
+        private final String documentationPath;
+        private final Member[] properties;
+        private final Member[] attributes;
+
+        private Type(ResourceType type, StringPool pool) {
+            this.documentationBase = pool.urlBase(type.getDocumentation());
+            this.documentationPath = pool.urlPath(type.getDocumentation());
+            this.properties = type.getProperties().entrySet().stream()
+                .map(e -> new Member(e.getKey(), e.getValue(), pool))
+                .toArray(Member[]::new);
+            this.attributes = type.getAttributes().entrySet().stream()
+                .map(e -> new Member(e.getKey(), e.getValue(), pool))
+                .toArray(Member[]::new);
+        }
+
+        public String getDocumentation() {
+            return join(documentationBase, documentationPath);
+        }
+
+        public int getPropertyCount() {
+            return properties.length;
+        }
+
+        public Member getProperty(int index) {
+            return properties[index];
+        }
+
+        public int getAttributeCount() {
+            return attributes.length;
+        }
+
+        public Member getAttribute(int index) {
+            return attributes[index];
+        }
+
+        public ResourceType toResourceType() {
+            ResourceType type = new ResourceType();
+            type.setDocumentation(getDocumentation());
+            Map<String, PropertyType> props = new LinkedHashMap<>();
+            for (Member each: properties) {
+                props.put(each.name, each.toPropertyType());
+            }
+            Map<String, AttributeType> attrs = new LinkedHashMap<>();
+            for (Member each: attributes) {
+                attrs.put(each.name, each.toAttributeType());
+            }
+            type.setProperties(props);
+            type.setAttributes(attrs);
+            return type;
+        }
+    }
+
+    private final String resourceSpecificationVersion;
+    private final String[] propertyNames;
+    private final Type[] propertyTypes;
+    private final String[] resourceNames;
+    private final Type[] resourceTypes;
+    private final Set<String> skippedPropertyTypes;
+
+    private CompactSpecification(CfnSpecification specification, StringPool pool) {
+        this.resourceSpecificationVersion = pool.intern(specification.getResourceSpecificationVersion());
+        this.propertyNames = sortedNames(specification.getPropertyTypes(), pool);
+        this.propertyTypes = types(propertyNames, specification.getPropertyTypes(), pool);
+        this.resourceNames = sortedNames(specification.getResourceTypes(), pool);
+        this.resourceTypes = types(resourceNames, specification.getResourceTypes(), pool);
+        this.skippedPropertyTypes = specification.getSkippedPropertyTypes().isEmpty() ? Collections.emptySet() :
+            Collections.unmodifiableSet(new HashSet<>(specification.getSkippedPropertyTypes()));
+    }
+
+    public static CompactSpecification of(CfnSpecification specification) {
+        return of(specification, new StringPool());
+    }
+
+    public static CompactSpecification of(CfnSpecification specification, StringPool pool) {
+        return new CompactSpecification(specification, pool);
+    }
+
+    public String getResourceSpecificationVersion() {
+        return resourceSpecificationVersion;
+    }
+
+    public Type getPropertyType(String name) {
+        int index = Arrays.binarySearch(propertyNames, name);
+        return index >= 0 ? propertyTypes[index] : null;
+    }
+
+    public Type getResourceType(String name) {
+        int index = Arrays.binarySearch(resourceNames, name);
+        return index >= 0 ? resourceTypes[index] : null;
+    }
+
+    public CfnSpecification asSpecification() {
+        CfnSpecification specification = new CfnSpecification();
+        specification.setResourceSpecificationVersion(resourceSpecificationVersion);
+        specification.setPropertyTypes(new TypesView(propertyNames, propertyTypes));
+        specification.setResourceTypes(new TypesView(resourceNames, resourceTypes));
+        specification.setSkippedPropertyTypes(skippedPropertyTypes);
+        return specification;
+    }
+
+    private static String[] sortedNames(Map<String, ResourceType> types, StringPool pool) {
+        String[] names = types.keySet().stream().map(pool::intern).toArray(String[]::new);
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static Type[] types(String[] names, Map<String, ResourceType> types, StringPool pool) {
+        Type[] compact = new Type[names.length];
+        for (int i = 0; i < names.length; i++) {
+            compact[i] = new Type(types.get(names[i]), pool);
+        }
+        return compact;
+    }
+
+    private static int flags(Boolean value, byte set, byte bit) {
+        return value == null ? 0 : set | (value ? bit : 0);
+    }
+
+    private static String join(String base, String path) {
+        return base == null ? path : base + path;
+    }
+
+    /**
+     * Read-only map view materializing a {@link ResourceType} on every value access.
+     */
+    private static final class TypesView extends AbstractMap<String, ResourceType> {
+        private final String[] names;
+        private final Type[] types;
+
+        TypesView(String[] names, Type[] types) {
+            this.names = names;
+            this.types = types;
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && Arrays.binarySearch(names, key) >= 0;
+        }
+
+        @Override
+        public ResourceType get(Object key) {
+            int index = key instanceof String ? Arrays.binarySearch(names, key) : -1;
+            return index >= 0 ? types[index].toResourceType() : null;
+        }
+
+        @Override
+        public Set<Entry<String, ResourceType>> entrySet() {
+            return new AbstractSet<Entry<String, ResourceType>>() {
+                @Override
+                public Iterator<Entry<String, ResourceType>> iterator() {
+                    return new Iterator<Entry<String, ResourceType>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, ResourceType> next() {
+                            if (next >= names.length) {
+                                throw new NoSuchElementException();
+                            }
+                            final int index = next++;
+                            return new LazyEntry<String, ResourceType>(names[index]) {
+                                @Override
+                                public ResourceType getValue() {
+                                    return types[index].toResourceType();
+                                }
+                            };
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+            };
+        }
+    }
+}
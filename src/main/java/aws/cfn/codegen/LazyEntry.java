@@ -0,0 +1,47 @@
+package aws.cfn.codegen;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Read-only map entry whose value is decoded each time it is read, for the type views of
+ * specifications that keep their types in another form. Equality and hash code follow the
+ * {@link Map.Entry} contract through {@link #getValue()}.
+ */
+abstract class LazyEntry<K, V> implements Map.Entry<K, V> {
+
+    private final K key;
+
+    LazyEntry(K key) {
+        this.key = key;
+    }
+
+    @Override
+    public K getKey() {
+        return key;
+    }
+
+    @Override
+    public V setValue(V value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Map.Entry)) {
+            return false;
+        }
+        Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+        return Objects.equals(key, other.getKey()) && Objects.equals(getValue(), other.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + getValue();
+    }
+}
@@ -0,0 +1,93 @@
+package aws.cfn.codegen;
+
+import com.google.common.hash.HashCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * The specifications of several regions merged into one. Each type takes the definition most of
+ * the regions having it agree on, ties going to the first region by name, and records which
+ * regions have the type at all. The types a region defines differently from the merged
+ * specification are kept per region. The merged specification carries the highest version.
+ */
+public final class MergedSpecification {
+
+    private final CfnSpecification specification = new CfnSpecification();
+    private final Map<String, SortedSet<String>> regions = new HashMap<>(1024);
+    private final Map<String, Set<String>> differences = new TreeMap<>();
+
+    private MergedSpecification() {}
+
+    public static MergedSpecification of(Map<String, CfnSpecification> specifications) {
+        Map<String, CfnSpecification> sorted = new TreeMap<>(specifications);
+        MergedSpecification merged = new MergedSpecification();
+        merged.merge(sorted, CfnSpecification::getPropertyTypes, merged.specification.getPropertyTypes());
+        merged.merge(sorted, CfnSpecification::getResourceTypes, merged.specification.getResourceTypes());
+        for (CfnSpecification each: sorted.values()) {
+            String version = each.getResourceSpecificationVersion();
+            if (SpecificationLoader.compareVersions(version,
+                    merged.specification.getResourceSpecificationVersion()) > 0) {
+                merged.specification.setResourceSpecificationVersion(version);
+            }
+            merged.specification.getSkippedPropertyTypes().addAll(each.getSkippedPropertyTypes());
+        }
+        merged.specification.getSkippedPropertyTypes().removeAll(merged.specification.getPropertyTypes().keySet());
+        return merged;
+    }
+
+    private void merge(Map<String, CfnSpecification> specifications,
+                       Function<CfnSpecification, Map<String, ResourceType>> types,
+                       Map<String, ResourceType> into) {
+        // Type name to the regions having each distinct definition, in region order
+        Map<String, Map<HashCode, List<String>>> definitions = new HashMap<>(1024);
+        specifications.forEach((region, spec) -> types.apply(spec).forEach((name, type) ->
+            definitions.computeIfAbsent(name, ign -> new LinkedHashMap<>(2))
+                .computeIfAbsent(type.structuralHash(), ign -> new ArrayList<>())
+                .add(region)));
+        definitions.forEach((name, variants) -> {
+            List<String> common = null;
+            SortedSet<String> having = new TreeSet<>();
+            for (List<String> each: variants.values()) {
+                if (common == null || each.size() > common.size()) {
+                    common = each;
+                }
+                having.addAll(each);
+            }
+            into.put(name, types.apply(specifications.get(common.get(0))).get(name));
+            regions.put(name, having);
+            for (List<String> each: variants.values()) {
+                if (each != common) {
+                    each.forEach(region -> differences.computeIfAbsent(region, ign -> new TreeSet<>()).add(name));
+                }
+            }
+        });
+    }
+
+    public CfnSpecification getSpecification() {
+        return specification;
+    }
+
+    /**
+     * @return the regions having the resource or property type, empty for unknown types
+     */
+    public SortedSet<String> getRegions(String name) {
+        return regions.getOrDefault(name, Collections.emptySortedSet());
+    }
+
+    /**
+     * @return the names of the types the region defines differently from the merged specification
+     */
+    public Set<String> getDifferences(String region) {
+        return differences.getOrDefault(region, Collections.emptySet());
+    }
+}
@@ -0,0 +1,337 @@
+package aws.cfn.codegen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads CloudFormation registry provider schemas, one JSON schema per resource type, and converts
+ * them into the {@link CfnSpecification} model so they can be generated like the types of a region
+ * specification.
+ * <p>
+ * Properties listed in readOnlyProperties become attributes, createOnlyProperties are immutable and
+ * every object definition the resource refers to becomes a property type namespaced by the resource
+ * type name, which properties refer to by that qualified name. Constructs the model can not
+ * express, like oneOf or nested arrays, are converted to Json.
+ *
+ * @see <a href="https://docs.aws.amazon.com/cloudformation-cli/latest/userguide/resource-type-schema.html">Resource type schema</a>
+ */
+public class ProviderSchemaLoader {
+
+    private static final Logger logger = LogManager.getLogger(ProviderSchemaLoader.class);
+
+    private static final String PROPERTIES_POINTER = "/properties/";
+    private static final String DEFINITIONS_REF = "#/definitions/";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Executor executor;
+
+    public ProviderSchemaLoader(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Converts every provider schema in the directory or archive, schemas are read and converted
+     * in parallel on the executor. Schemas that can not be read or converted are reported and
+     * left out. The returned specification has no version.
+     */
+    public CfnSpecification load(Path schemas) throws IOException {
+        SpecSource.Stats stats = new SpecSource.Stats();
+        List<SpecSource> sources = SpecSource.list(schemas);
+        List<CompletableFuture<CfnSpecification>> converted = new ArrayList<>(sources.size());
+        for (SpecSource each: sources) {
+            converted.add(CompletableFuture.supplyAsync(() -> {
+                try (InputStream stream = each.open(stats)) {
+                    return convert(mapper.readTree(stream));
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor).exceptionally(error -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ?
+                    error.getCause() : error;
+                logger.error(String.format("Skipping provider schema %s", each), cause);
+                return null;
+            }));
+        }
+
+        CfnSpecification merged = new CfnSpecification();
+        for (CompletableFuture<CfnSpecification> each: converted) {
+            CfnSpecification spec = each.join();
+            if (spec != null) {
+                add(merged, spec);
+            }
+        }
+        logger.debug("Loaded {} provider schemas from {}, {}",
+            merged.getResourceTypes().size(), schemas, stats);
+        return merged;
+    }
+
+    /**
+     * @return a new specification with the types of both, types already in the first one are kept
+     */
+    public static CfnSpecification merge(CfnSpecification specification, CfnSpecification registry) {
+        CfnSpecification merged = new CfnSpecification();
+        merged.setResourceSpecificationVersion(specification.getResourceSpecificationVersion());
+        merged.setPropertyTypes(new HashMap<>(specification.getPropertyTypes()));
+        merged.setResourceTypes(new HashMap<>(specification.getResourceTypes()));
+        merged.setSkippedPropertyTypes(specification.getSkippedPropertyTypes());
+        registry.getPropertyTypes().forEach(merged.getPropertyTypes()::putIfAbsent);
+        registry.getResourceTypes().forEach((name, type) -> {
+            if (merged.getResourceTypes().putIfAbsent(name, type) != null) {
+                logger.debug("Resource type {} is in the specification, ignoring its provider schema", name);
+            }
+        });
+        return merged;
+    }
+
+    private static void add(CfnSpecification into, CfnSpecification schema) {
+        schema.getResourceTypes().forEach((name, type) -> {
+            if (into.getResourceTypes().putIfAbsent(name, type) != null) {
+                throw new CfnSpecificationException("Resource type " + name + " has more than one provider schema");
+            }
+        });
+        into.getPropertyTypes().putAll(schema.getPropertyTypes());
+    }
+
+    /**
+     * Converts a single provider schema.
+     */
+    public CfnSpecification convert(JsonNode schema) throws CfnSpecificationException {
+        String typeName = schema.path("typeName").asText(null);
+        if (typeName == null) {
+            throw new CfnSpecificationException("Provider schema has no typeName");
+        }
+        Conversion conversion = new Conversion(typeName, schema.path("definitions"));
+        Set<String> readOnly = propertyNames(schema.path("readOnlyProperties"));
+        Set<String> createOnly = propertyNames(schema.path("createOnlyProperties"));
+        Set<String> required = strings(schema.path("required"));
+
+        ResourceType resource = new ResourceType();
+        resource.setDocumentation(documentation(schema));
+        Map<String, PropertyType> properties = new LinkedHashMap<>();
+        Map<String, AttributeType> attributes = new LinkedHashMap<>();
+        schema.path("properties").fields().forEachRemaining(e -> {
+            String name = e.getKey();
+            if (readOnly.contains(name)) {
+                AttributeType attr = new AttributeType();
+                conversion.fill(attr, e.getValue(), name);
+                attributes.put(name, attr);
+            }
+            else {
+                PropertyType prop = new PropertyType();
+                conversion.fill(prop, e.getValue(), name);
+                prop.setDocumentation(e.getValue().path("description").asText(null));
+                prop.setRequired(required.contains(name));
+                prop.setUpdateType(createOnly.contains(name) ? "Immutable" : "Mutable");
+                properties.put(name, prop);
+            }
+        });
+        resource.setProperties(properties);
+        resource.setAttributes(attributes);
+
+        CfnSpecification spec = new CfnSpecification();
+        spec.getResourceTypes().put(typeName, resource);
+        spec.getPropertyTypes().putAll(conversion.propertyTypes);
+        spec.validate();
+        return spec;
+    }
+
+    private static String documentation(JsonNode schema) {
+        for (String field: new String[] { "documentationUrl", "sourceUrl", "description" }) {
+            String value = schema.path(field).asText(null);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the top level property names of JSON pointers like /properties/Arn
+     */
+    private static Set<String> propertyNames(JsonNode pointers) {
+        Set<String> names = new HashSet<>();
+        for (String each: strings(pointers)) {
+            if (each.startsWith(PROPERTIES_POINTER) && each.indexOf('/', PROPERTIES_POINTER.length()) < 0) {
+                names.add(each.substring(PROPERTIES_POINTER.length()));
+            }
+        }
+        return names;
+    }
+
+    private static Set<String> strings(JsonNode array) {
+        Set<String> values = new HashSet<>();
+        array.forEach(each -> values.add(each.asText()));
+        return values;
+    }
+
+    /**
+     * Converts the properties of one schema, collecting the property types its object
+     * definitions turn into.
+     */
+    private static final class Conversion {
+        private final String typeName;
+        private final JsonNode definitions;
+        private final Map<String, ResourceType> propertyTypes = new LinkedHashMap<>();
+
+        Conversion(String typeName, JsonNode definitions) {
+            this.typeName = typeName;
+            this.definitions = definitions;
+        }
+
+        /**
+         * Follows $refs to definitions that are not objects, e.g. a constrained string, until
+         * reaching the schema that describes the value.
+         */
+        private JsonNode resolve(JsonNode node) {
+            Set<String> seen = new HashSet<>();
+            while (node.has("$ref")) {
+                String name = definitionName(node);
+                JsonNode definition = definitions.path(name);
+                if (definition.isMissingNode()) {
+                    throw new CfnSpecificationException(typeName + " refers to unknown definition " +
+                        node.path("$ref").asText());
+                }
+                if (isObject(definition) || !seen.add(name)) {
+                    return node;
+                }
+                node = definition;
+            }
+            return node;
+        }
+
+        private String definitionName(JsonNode ref) {
+            String value = ref.path("$ref").asText();
+            if (!value.startsWith(DEFINITIONS_REF)) {
+                throw new CfnSpecificationException(typeName + " has unsupported $ref " + value);
+            }
+            return value.substring(DEFINITIONS_REF.length());
+        }
+
+        private static boolean isObject(JsonNode node) {
+            return node.has("properties") && (!node.has("type") || "object".equals(node.path("type").asText()));
+        }
+
+        /**
+         * @return the qualified property type name for an object schema, null if the object can
+         * only be Json. The name is qualified by the resource type so a definition named like a
+         * top level property type, e.g. Tag, is not taken for that one.
+         */
+        private String objectType(JsonNode node, String nameHint) {
+            String name;
+            JsonNode definition;
+            if (node.has("$ref")) {
+                name = definitionName(node);
+                definition = definitions.path(name);
+            }
+            else if (!definitions.has(nameHint) && nameHint.indexOf('.') < 0 &&
+                     !propertyTypes.containsKey(typeName + "." + nameHint)) {
+                // Inline object, named after the property that holds it unless that name is taken
+                name = nameHint;
+                definition = node;
+            }
+            else {
+                return null;
+            }
+            String qualified = typeName + "." + name;
+            if (!propertyTypes.containsKey(qualified)) {
+                ResourceType type = new ResourceType();
+                // Registered before converting so recursive definitions terminate
+                propertyTypes.put(qualified, type);
+                type.setDocumentation(definition.path("description").asText(null));
+                Set<String> required = strings(definition.path("required"));
+                Map<String, PropertyType> properties = new LinkedHashMap<>();
+                definition.path("properties").fields().forEachRemaining(e -> {
+                    PropertyType prop = new PropertyType();
+                    fill(prop, e.getValue(), e.getKey());
+                    prop.setDocumentation(e.getValue().path("description").asText(null));
+                    prop.setRequired(required.contains(e.getKey()));
+                    prop.setUpdateType("Mutable");
+                    properties.put(e.getKey(), prop);
+                });
+                type.setProperties(properties);
+            }
+            return qualified;
+        }
+
+        private static String primitive(JsonNode node) {
+            switch (node.path("type").asText("")) {
+                case "string":
+                    return "String";
+                case "integer":
+                    return "Integer";
+                case "number":
+                    return "Double";
+                case "boolean":
+                    return "Boolean";
+                default:
+                    return null;
+            }
+        }
+
+        void fill(AttributeType attr, JsonNode node, String nameHint) {
+            node = resolve(node);
+            String primitive = primitive(node);
+            if (primitive != null) {
+                attr.setPrimitiveType(primitive);
+                return;
+            }
+            if ("array".equals(node.path("type").asText())) {
+                attr.setType("List");
+                fillItem(attr, node.path("items"), nameHint);
+                if (attr instanceof PropertyType && node.has("uniqueItems")) {
+                    ((PropertyType) attr).setDuplicatesAllowed(!node.path("uniqueItems").asBoolean());
+                }
+                return;
+            }
+            if (node.has("$ref") || isObject(node)) {
+                String type = objectType(node, nameHint);
+                if (type != null) {
+                    attr.setType(type);
+                    return;
+                }
+            }
+            JsonNode patterns = node.path("patternProperties");
+            if (patterns.size() == 1) {
+                attr.setType("Map");
+                fillItem(attr, patterns.elements().next(), nameHint);
+                return;
+            }
+            attr.setPrimitiveType("Json");
+        }
+
+        private void fillItem(AttributeType attr, JsonNode item, String nameHint) {
+            item = resolve(item);
+            String primitive = primitive(item);
+            if (primitive != null) {
+                attr.setPrimitiveItemType(primitive);
+                return;
+            }
+            if (item.has("$ref") || isObject(item)) {
+                String type = objectType(item, nameHint);
+                if (type != null) {
+                    attr.setItemType(type);
+                    return;
+                }
+            }
+            attr.setPrimitiveItemType("Json");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package aws.cfn.codegen;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The property types each resource or property type refers to. A complex property refers to the
+ * property type of its type name when there is one, a top level one like Tag or a qualified one as
+ * converted provider schemas refer to, else to the property type namespaced by the resource, the
+ * same way the generated schemas refer to definitions.
+ */
+public final class ReferenceGraph {
+
+    private final Map<String, Set<String>> references = new HashMap<>(1024);
+
+    public static ReferenceGraph of(CfnSpecification specification) {
+        ReferenceGraph graph = new ReferenceGraph();
+        Set<String> propertyNames = specification.getPropertyTypes().keySet();
+        specification.getPropertyTypes().forEach((name, type) -> graph.add(name, type, propertyNames));
+        specification.getResourceTypes().forEach((name, type) -> graph.add(name, type, propertyNames));
+        return graph;
+    }
+
+    /**
+     * @return true for names of property types, namespaced like AWS::S3::Bucket.Rule or top level
+     * like Tag, false for names of resource types like AWS::S3::Bucket
+     */
+    public static boolean isPropertyTypeName(String name) {
+        return name.indexOf('.') >= 0 || !name.contains("::");
+    }
+
+    /**
+     * Records the references of the resource or property type.
+     */
+    public void add(String name, ResourceType type, Set<String> propertyNames) {
+        if (type.getProperties() == null) {
+            return;
+        }
+        int dot = name.indexOf('.');
+        String namespace = dot < 0 ? name : name.substring(0, dot);
+        Set<String> targets = new HashSet<>();
+        type.getProperties().values().forEach(
+            propType -> propType.getComplexType().ifPresent(cplx ->
+                targets.add(propertyNames.contains(cplx) ? cplx : namespace + "." + cplx)));
+        if (!targets.isEmpty()) {
+            references.put(name, targets);
+        }
+    }
+
+    /**
+     * @return the property types reachable from the roots, directly or through other property types
+     */
+    public Set<String> reachable(Collection<String> roots) {
+        Set<String> reached = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            for (String each: references.getOrDefault(pending.pop(), Collections.emptySet())) {
+                if (reached.add(each)) {
+                    pending.push(each);
+                }
+            }
+        }
+        return reached;
+    }
+}
@@ -1,7 +1,11 @@
 package aws.cfn.codegen;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,4 +23,53 @@ public class ResourceType {
     private Map<String, AttributeType> attributes = new HashMap<>();
     private String documentation;
     private Map<String, PropertyType> properties = new HashMap<>();
+
+    /**
+     * @return the SHA-256 of everything the type holds. Properties and attributes are taken in
+     * their iteration order, which is also the order definitions are generated in, so equal types
+     * iterating differently hash differently.
+     */
+    public HashCode structuralHash() {
+        Hasher hasher = Hashing.sha256().newHasher();
+        put(hasher, documentation);
+        hasher.putInt(properties == null ? -1 : properties.size());
+        if (properties != null) {
+            properties.forEach((name, type) -> {
+                put(hasher, name);
+                put(hasher, type);
+                put(hasher, type.getDocumentation());
+                put(hasher, type.getUpdateType());
+                put(hasher, type.getDuplicatesAllowed());
+                put(hasher, type.getRequired());
+            });
+        }
+        hasher.putInt(attributes == null ? -1 : attributes.size());
+        if (attributes != null) {
+            attributes.forEach((name, type) -> {
+                put(hasher, name);
+                put(hasher, type);
+            });
+        }
+        return hasher.hash();
+    }
+
+    private static void put(Hasher hasher, AttributeType type) {
+        put(hasher, type.getType());
+        put(hasher, type.getItemType());
+        put(hasher, type.getPrimitiveType());
+        put(hasher, type.getPrimitiveItemType());
+    }
+
+    private static void put(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        }
+        else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void put(Hasher hasher, Boolean value) {
+        hasher.putByte(value == null ? (byte) -1 : value ? (byte) 1 : (byte) 0);
+    }
 }
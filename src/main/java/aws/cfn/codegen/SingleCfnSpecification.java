@@ -6,6 +6,7 @@ import lombok.ToString;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 @Data
 @EqualsAndHashCode
@@ -15,16 +16,19 @@ public class SingleCfnSpecification {
     private Map<String, ResourceType> propertyTypes = new HashMap<>(256);
     private Map<String, ResourceType> resourceType;
 
+    /**
+     * Checks that every complex property of every resource and property type refers to a known
+     * property type.
+     */
     public void validate() throws CfnSpecificationException {
-        resourceType.values().iterator().next().getProperties().forEach(
-            (name, type) -> {
-                type.getComplexType().ifPresent(propName -> {
-                    if (!propertyTypes.containsKey(propName)) {
-                        throw new CfnSpecificationException(
-                            "Property name " + name + " referenced but not defined " +
-                                " Names = " + propertyTypes.keySet());
-                    }
-                });
-            });
+        if (resourceType == null || resourceType.isEmpty()) {
+            throw new CfnSpecificationException("Specification has no ResourceType");
+        }
+        Set<String> names = propertyTypes.keySet();
+        resourceType.forEach((name, type) -> CfnSpecification.validate(name, type, names));
+        propertyTypes.forEach((name, type) -> {
+            int dot = name.indexOf('.');
+            CfnSpecification.validate(dot < 0 ? name : name.substring(0, dot), type, names);
+        });
     }
 }
@@ -0,0 +1,412 @@
+package aws.cfn.codegen;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Where a single specification document is read from: a URL, a local file, or an entry of a
+ * directory, zip or tar archive holding many of them. Whatever the origin the stored bytes may be
+ * plain JSON, gzip or a zip holding one document, {@link #open(Stats)} sniffs and decodes them.
+ * <p>
+ * {@link #list(Path)} expands a local path into one source per specification it holds.
+ */
+public abstract class SpecSource {
+
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+    private static final byte[] ZIP_MAGIC = { 'P', 'K', 0x03, 0x04 };
+    private static final int TAR_BLOCK = 512;
+
+    /**
+     * Running totals of the stored bytes read from sources and the bytes they decoded to. Safe to
+     * share between threads.
+     */
+    public static final class Stats {
+        private final LongAdder read = new LongAdder();
+        private final LongAdder inflated = new LongAdder();
+
+        public long getBytesRead() {
+            return read.sum();
+        }
+
+        public long getBytesInflated() {
+            return inflated.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "read " + getBytesRead() + " bytes, inflated to " + getBytesInflated() + " bytes";
+        }
+    }
+
+    /**
+     * Opens the stored bytes of a source.
+     */
+    public interface Opener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * The decoded bytes of a source that has already been read.
+     */
+    public static final class Content {
+        private final String name;
+        private final byte[] bytes;
+
+        private Content(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public InputStream open() {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    private final String name;
+
+    protected SpecSource(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the URL, file path or archive entry name of the source
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Opens the bytes as they are stored, stored bytes read must be added to the stats.
+     */
+    protected abstract InputStream openStored(Stats stats) throws IOException;
+
+    /**
+     * @return the decoded specification document
+     */
+    public InputStream open(Stats stats) throws IOException {
+        return new Counting(decode(openStored(stats)), stats.inflated);
+    }
+
+    public Content read(Stats stats) throws IOException {
+        try (InputStream stream = open(stats)) {
+            return new Content(name, ByteStreams.toByteArray(stream));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    public static SpecSource of(String name, Opener opener) {
+        return new SpecSource(name) {
+            @Override
+            protected InputStream openStored(Stats stats) throws IOException {
+                return new Counting(opener.open(), stats.read);
+            }
+        };
+    }
+
+    public static SpecSource of(URL location) {
+        return of(location.toString(), location::openStream);
+    }
+
+    public static SpecSource of(Path file) {
+        return of(file.toString(), () -> Files.newInputStream(file));
+    }
+
+    /**
+     * Expands a local path into its specifications. A directory yields every regular file below
+     * it, a zip or tar archive (optionally gzipped) every file entry and any other file itself.
+     * Directory and archive sources are named by their path relative to the root, using '/'.
+     */
+    public static List<SpecSource> list(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return listDirectory(path);
+        }
+        String fileName = path.getFileName().toString();
+        if (isTar(fileName)) {
+            return listTar(path, !fileName.endsWith(".tar"));
+        }
+        if (fileName.endsWith(".zip")) {
+            List<SpecSource> entries = listZip(path);
+            // A zip holding a single document is just a compressed specification
+            return entries.size() == 1 ? Collections.singletonList(of(path)) : entries;
+        }
+        return Collections.singletonList(of(path));
+    }
+
+    /**
+     * @return true for a directory or an archive, the paths {@link #list(Path)} may expand to
+     * more than one source
+     */
+    public static boolean isCollection(Path path) {
+        String fileName = path.getFileName().toString();
+        return Files.isDirectory(path) || isTar(fileName) || fileName.endsWith(".zip");
+    }
+
+    private static boolean isTar(String fileName) {
+        return fileName.endsWith(".tar") || fileName.endsWith(".tar.gz") || fileName.endsWith(".tgz");
+    }
+
+    private static List<SpecSource> listDirectory(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                .sorted()
+                .map(file -> of(relative(root, file), () -> Files.newInputStream(file)))
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static String relative(Path root, Path file) {
+        List<String> parts = new ArrayList<>();
+        for (Path each: root.relativize(file)) {
+            parts.add(each.toString());
+        }
+        return String.join("/", parts);
+    }
+
+    private static List<SpecSource> listZip(Path archive) throws IOException {
+        List<SpecSource> sources = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            for (ZipEntry entry: Collections.list(zip.entries())) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String entryName = entry.getName();
+                sources.add(new SpecSource(entryName) {
+                    @Override
+                    protected InputStream openStored(Stats stats) throws IOException {
+                        ZipFile file = new ZipFile(archive.toFile());
+                        try {
+                            ZipEntry stored = file.getEntry(entryName);
+                            InputStream stream = file.getInputStream(stored);
+                            // The archive inflates the entry itself, count what it had stored
+                            stats.read.add(stored.getCompressedSize());
+                            return new FilterInputStream(stream) {
+                                @Override
+                                public void close() throws IOException {
+                                    try {
+                                        super.close();
+                                    }
+                                    finally {
+                                        file.close();
+                                    }
+                                }
+                            };
+                        }
+                        catch (IOException | RuntimeException e) {
+                            file.close();
+                            throw e;
+                        }
+                    }
+                });
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Indexes the file entries of a ustar or GNU tar archive. Entries of a plain tar are read by
+     * seeking to their data, a gzipped tar has to be inflated up to the entry.
+     */
+    private static List<SpecSource> listTar(Path archive, boolean gzipped) throws IOException {
+        List<SpecSource> sources = new ArrayList<>();
+        try (InputStream stream = openTar(archive, gzipped)) {
+            byte[] header = new byte[TAR_BLOCK];
+            long offset = 0;
+            String longName = null;
+            while (true) {
+                if (ByteStreams.read(stream, header, 0, TAR_BLOCK) < TAR_BLOCK || header[0] == 0) {
+                    break;
+                }
+                offset += TAR_BLOCK;
+                long size = octal(header, 124, 12);
+                long padded = (size + TAR_BLOCK - 1) / TAR_BLOCK * TAR_BLOCK;
+                byte type = header[156];
+                if (type == 'L') {
+                    // GNU long name, the data is the name of the next entry
+                    byte[] data = new byte[(int) size];
+                    ByteStreams.readFully(stream, data);
+                    ByteStreams.skipFully(stream, padded - size);
+                    longName = string(data, 0, data.length);
+                    offset += padded;
+                    continue;
+                }
+                if (type == '0' || type == 0) {
+                    String entryName = longName != null ? relativeTarName(longName) : tarName(header);
+                    long start = offset;
+                    sources.add(of(entryName, () -> openTarEntry(archive, gzipped, start, size)));
+                }
+                longName = null;
+                ByteStreams.skipFully(stream, padded);
+                offset += padded;
+            }
+        }
+        return sources;
+    }
+
+    private static InputStream openTar(Path archive, boolean gzipped) throws IOException {
+        InputStream stream = Files.newInputStream(archive);
+        try {
+            return gzipped ? new GZIPInputStream(stream) : stream;
+        }
+        catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    private static InputStream openTarEntry(Path archive, boolean gzipped, long start, long size)
+        throws IOException {
+        if (gzipped) {
+            InputStream stream = openTar(archive, gzipped);
+            try {
+                ByteStreams.skipFully(stream, start);
+            }
+            catch (IOException e) {
+                stream.close();
+                throw e;
+            }
+            return ByteStreams.limit(stream, size);
+        }
+        FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+        channel.position(start);
+        return ByteStreams.limit(Channels.newInputStream(channel), size);
+    }
+
+    private static String tarName(byte[] header) {
+        String name = string(header, 0, 100);
+        boolean ustar = string(header, 257, 5).equals("ustar");
+        String prefix = ustar ? string(header, 345, 155) : "";
+        String path = prefix.isEmpty() ? name : prefix + "/" + name;
+        return relativeTarName(path);
+    }
+
+    private static String relativeTarName(String path) {
+        // Archives made with "tar -C dir ." name their entries ./...
+        return path.startsWith("./") ? path.substring(2) : path;
+    }
+
+    private static String string(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long octal(byte[] bytes, int offset, int length) throws IOException {
+        String value = string(bytes, offset, length).trim();
+        try {
+            return value.isEmpty() ? 0 : Long.parseLong(value, 8);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid tar entry size " + value, e);
+        }
+    }
+
+    /**
+     * Sniffs the leading bytes of the stream and returns a stream of the decoded document. Gzip is
+     * inflated, a zip yields its first entry, anything else is returned as is.
+     */
+    public static InputStream decode(InputStream input) throws IOException {
+        PushbackInputStream stream = new PushbackInputStream(input, ZIP_MAGIC.length);
+        try {
+            byte[] magic = new byte[ZIP_MAGIC.length];
+            int nread = ByteStreams.read(stream, magic, 0, magic.length);
+            if (nread == 0) {
+                throw new IOException("Can not read stream, it is empty");
+            }
+            stream.unread(magic, 0, nread);
+            if (nread >= 2 && (magic[0] & 0xFF) == GZIP_MAGIC_0 && (magic[1] & 0xFF) == GZIP_MAGIC_1) {
+                return new GZIPInputStream(stream);
+            }
+            if (nread == ZIP_MAGIC.length && Arrays.equals(magic, ZIP_MAGIC)) {
+                ZipInputStream zip = new ZipInputStream(stream);
+                ZipEntry entry = zip.getNextEntry();
+                while (entry != null && entry.isDirectory()) {
+                    entry = zip.getNextEntry();
+                }
+                if (entry == null) {
+                    throw new IOException("Zip archive does not hold a specification");
+                }
+                return zip;
+            }
+            return stream;
+        }
+        catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds every byte read through it to a counter.
+     */
+    private static final class Counting extends FilterInputStream {
+        private final LongAdder counter;
+
+        Counting(InputStream in, LongAdder counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                counter.increment();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                counter.add(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            counter.add(skipped);
+            return skipped;
+        }
+    }
+}
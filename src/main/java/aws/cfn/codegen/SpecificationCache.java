@@ -0,0 +1,153 @@
+package aws.cfn.codegen;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Local cache for specification downloads. Each URI is keyed by the SHA-256 of its text and
+ * stored as the raw (still compressed) bytes next to a properties file holding the ETag and
+ * Last-Modified headers of the response. Cached entries are revalidated with If-None-Match
+ * and If-Modified-Since, a 304 response serves the bytes from disk. In offline mode the
+ * network is never consulted and a missing entry is an error.
+ * <p>
+ * Only http and https locations are cached, anything else (file, jar) is read directly.
+ */
+public class SpecificationCache {
+
+    private static final Logger logger = LogManager.getLogger(SpecificationCache.class);
+
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+    private static final String LOCATION = "location";
+
+    private final File directory;
+    private final boolean offline;
+
+    public SpecificationCache(File directory, boolean offline) {
+        this.directory = Objects.requireNonNull(directory);
+        this.offline = offline;
+    }
+
+    public InputStream open(URI location) throws IOException {
+        return new ByteArrayInputStream(fetch(location));
+    }
+
+    public byte[] fetch(URI location) throws IOException {
+        String scheme = location.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            try (InputStream stream = location.toURL().openStream()) {
+                return ByteStreams.toByteArray(stream);
+            }
+        }
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Can not create cache directory " + directory);
+        }
+        String key = Hashing.sha256().hashString(location.toString(), StandardCharsets.UTF_8).toString();
+        Path body = new File(directory, key + ".spec").toPath();
+        Path meta = new File(directory, key + ".properties").toPath();
+        Properties cached = Files.exists(body) && Files.exists(meta) ? readMeta(meta) : null;
+
+        if (offline) {
+            if (cached == null) {
+                throw new IOException("No cached specification for " + location + " in offline mode");
+            }
+            logger.debug("Offline, using cached specification for {}", location);
+            return Files.readAllBytes(body);
+        }
+
+        URLConnection connection = location.toURL().openConnection();
+        if (!(connection instanceof HttpURLConnection)) {
+            throw new IOException("Unexpected connection type for " + location);
+        }
+        HttpURLConnection http = (HttpURLConnection) connection;
+        try {
+            if (cached != null) {
+                String etag = cached.getProperty(ETAG);
+                String lastModified = cached.getProperty(LAST_MODIFIED);
+                if (etag != null) {
+                    http.setRequestProperty("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    http.setRequestProperty("If-Modified-Since", lastModified);
+                }
+            }
+
+            int code = http.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                logger.debug("Specification for {} not modified, using cached copy", location);
+                return Files.readAllBytes(body);
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response " + code + " fetching " + location);
+            }
+
+            byte[] content;
+            try (InputStream stream = http.getInputStream()) {
+                content = ByteStreams.toByteArray(stream);
+            }
+            Properties fresh = new Properties();
+            fresh.setProperty(LOCATION, location.toString());
+            if (http.getHeaderField("ETag") != null) {
+                fresh.setProperty(ETAG, http.getHeaderField("ETag"));
+            }
+            if (http.getHeaderField("Last-Modified") != null) {
+                fresh.setProperty(LAST_MODIFIED, http.getHeaderField("Last-Modified"));
+            }
+            store(body, meta, content, fresh);
+            logger.debug("Cached {} bytes for {}", content.length, location);
+            return content;
+        }
+        finally {
+            http.disconnect();
+        }
+    }
+
+    private static Properties readMeta(Path meta) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private void store(Path body, Path meta, byte[] content, Properties properties) throws IOException {
+        // Write to temporary files first so that an interrupted run never leaves a body
+        // with headers from a different response
+        Path tmpBody = Files.createTempFile(directory.toPath(), "spec", ".tmp");
+        Path tmpMeta = Files.createTempFile(directory.toPath(), "meta", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmpBody)) {
+                out.write(content);
+            }
+            try (Writer writer = Files.newBufferedWriter(tmpMeta, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            Files.move(tmpBody, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpMeta, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tmpBody);
+            Files.deleteIfExists(tmpMeta);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package aws.cfn.codegen;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Canonicalizes structurally equal types and their strings into a shared pool, so that specifications
+ * loaded for many regions share every type that did not change between them. Pooled instances are
+ * held weakly, they go away with the last specification referencing them.
+ * <p>
+ * Interned types are shared between specifications and must be treated as read-only. Instances of
+ * this class are safe to use from multiple threads.
+ */
+public class SpecificationInterner {
+
+    private final Interner<String> strings = Interners.newWeakInterner();
+    private final Interner<AttributeType> attributes = Interners.newWeakInterner();
+    private final Interner<PropertyType> properties = Interners.newWeakInterner();
+    private final Interner<ResourceType> types = Interners.newWeakInterner();
+
+    public CfnSpecification intern(CfnSpecification specification) {
+        specification.setResourceSpecificationVersion(intern(specification.getResourceSpecificationVersion()));
+        specification.setPropertyTypes(intern(specification.getPropertyTypes()));
+        specification.setResourceTypes(intern(specification.getResourceTypes()));
+        return specification;
+    }
+
+    public Map<String, ResourceType> intern(Map<String, ResourceType> specTypes) {
+        if (specTypes == null) {
+            return null;
+        }
+        Map<String, ResourceType> interned = new HashMap<>(Math.max(256, specTypes.size() * 4 / 3 + 1));
+        specTypes.forEach((name, type) -> interned.put(intern(name), intern(type)));
+        return interned;
+    }
+
+    public ResourceType intern(ResourceType type) {
+        if (type == null) {
+            return null;
+        }
+        type.setDocumentation(intern(type.getDocumentation()));
+        // Keep the document order the maps were bound with
+        Map<String, AttributeType> attrs = new LinkedHashMap<>();
+        type.getAttributes().forEach((name, attr) -> attrs.put(intern(name), intern(attr)));
+        type.setAttributes(attrs);
+        Map<String, PropertyType> props = new LinkedHashMap<>();
+        type.getProperties().forEach((name, prop) -> props.put(intern(name), intern(prop)));
+        type.setProperties(props);
+        return types.intern(type);
+    }
+
+    public PropertyType intern(PropertyType type) {
+        if (type == null) {
+            return null;
+        }
+        internFields(type);
+        type.setDocumentation(intern(type.getDocumentation()));
+        type.setUpdateType(intern(type.getUpdateType()));
+        return properties.intern(type);
+    }
+
+    public AttributeType intern(AttributeType type) {
+        if (type == null) {
+            return null;
+        }
+        if (type instanceof PropertyType) {
+            return intern((PropertyType) type);
+        }
+        internFields(type);
+        return attributes.intern(type);
+    }
+
+    public String intern(String value) {
+        return value == null ? null : strings.intern(value);
+    }
+
+    private void internFields(AttributeType type) {
+        type.setType(intern(type.getType()));
+        type.setItemType(intern(type.getItemType()));
+        type.setPrimitiveType(intern(type.getPrimitiveType()));
+        type.setPrimitiveItemType(intern(type.getPrimitiveItemType()));
+    }
+}
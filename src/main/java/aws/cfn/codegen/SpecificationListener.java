@@ -0,0 +1,38 @@
+package aws.cfn.codegen;
+
+/**
+ * Receives the contents of a CFN specification as it is being parsed by
+ * {@link SpecificationLoader#streamSpecification(java.net.URL, SpecificationListener)}.
+ * Each type is handed over as soon as its JSON object is read, the listener decides
+ * what to retain.
+ */
+public interface SpecificationListener {
+
+    default void version(String resourceSpecificationVersion) {}
+
+    /**
+     * Asked before a property type is parsed, types that are not included are skipped at the
+     * token level and never handed to {@link #propertyType(String, ResourceType)}.
+     */
+    default boolean includePropertyType(String name) {
+        return true;
+    }
+
+    /**
+     * Asked before a resource type is parsed, types that are not included are skipped at the
+     * token level and never handed to {@link #resourceType(String, ResourceType)}.
+     */
+    default boolean includeResourceType(String name) {
+        return true;
+    }
+
+    default void propertyType(String name, ResourceType type) {}
+
+    /**
+     * Called once the PropertyTypes section has been completely read, all property type
+     * names are known from this point on.
+     */
+    default void propertyTypesDone() {}
+
+    default void resourceType(String name, ResourceType type) {}
+}
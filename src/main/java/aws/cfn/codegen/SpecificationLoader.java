@@ -1,6 +1,8 @@
 package aws.cfn.codegen;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.MappingJsonFactory;
@@ -9,23 +11,40 @@ import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PushbackInputStream;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 
 /**
  * This loads a specification file into memory. URL could point to remote site or local
- * file. It uses {@link ObjectMapper} to get the underlying model
+ * file. It uses {@link ObjectMapper} to get the underlying model. Plain, gzipped or zipped
+ * content is decoded with {@link SpecSource#decode(InputStream)}. When created with a
+ * {@link SpecificationInterner} every loaded type is canonicalized through it.
  */
 public class SpecificationLoader {
 
     private final ObjectMapper mapperForJSON;
     private final MappingJsonFactory jsonFactory;
+    private final SpecificationInterner interner;
+
     public SpecificationLoader() {
+        this(null);
+    }
+
+    public SpecificationLoader(SpecificationInterner interner) {
+        this.interner = interner;
         jsonFactory = new MappingJsonFactory();
         mapperForJSON = new ObjectMapper(jsonFactory);
         mapperForJSON.configure(MapperFeature.USE_STD_BEAN_NAMING, true)
@@ -41,58 +60,223 @@ public class SpecificationLoader {
     }
 
     public CfnSpecification loadSpecification(URL location) throws IOException {
-        try (PushbackInputStream stream = new PushbackInputStream(location.openStream(), 8)) {
-            byte[] magic = new byte[4];
-            int nread = stream.read(magic);
-            if (nread < 4) {
-                throw new IOException("Can not read stream");
-            }
-            int magicNum = ((int)magic[0] & 0xFF) | ((int)magic[1] & 0xFF) << 8;
-            Reader reader;
-            if (GZIPInputStream.GZIP_MAGIC == magicNum) {
-                stream.unread(magic);
-                reader = new InputStreamReader(new GZIPInputStream(stream), StandardCharsets.UTF_8);
-            }
-            else {
-                magicNum |= ((int)magic[2] & 0xFF) << 16 | ((int)magic[3] & 0xFF) << 24;
-                if (magicNum == 0x04034b50) {
-                    stream.unread(magic);
-                    reader = new InputStreamReader(new ZipInputStream(stream), StandardCharsets.UTF_8);
+        return loadSpecification(location.openStream());
+    }
+
+    public CfnSpecification loadSpecification(InputStream input) throws IOException {
+        try (Reader reader = openReader(input)) {
+            CfnSpecification spec = mapperForJSON.readValue(reader, CfnSpecification.class);
+            return interner != null ? interner.intern(spec) : spec;
+        }
+    }
+
+    /**
+     * Loads only the types accepted by the filter, everything else is skipped while parsing
+     * without being materialized. The names of skipped property types are recorded in
+     * {@link CfnSpecification#getSkippedPropertyTypes()}, so that references to them still
+     * resolve and {@link CfnSpecification#validate()} holds.
+     */
+    public CfnSpecification loadSpecification(InputStream input, Predicate<String> filter) throws IOException {
+        CfnSpecification spec = new CfnSpecification();
+        streamSpecification(input, new SpecificationListener() {
+            @Override
+            public void version(String resourceSpecificationVersion) {
+                spec.setResourceSpecificationVersion(resourceSpecificationVersion);
+            }
+
+            @Override
+            public boolean includePropertyType(String name) {
+                if (filter.test(name)) {
+                    return true;
                 }
-                else {
-                    stream.unread(magic);
-                    reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+                spec.getSkippedPropertyTypes().add(name);
+                return false;
+            }
+
+            @Override
+            public void propertyType(String name, ResourceType type) {
+                spec.getPropertyTypes().put(name, type);
+            }
+
+            @Override
+            public boolean includeResourceType(String name) {
+                return filter.test(name);
+            }
+
+            @Override
+            public void resourceType(String name, ResourceType type) {
+                spec.getResourceTypes().put(name, type);
+            }
+        });
+        return spec;
+    }
+
+    /**
+     * Parses the specification token by token handing each property and resource type to
+     * the listener as soon as it has been read, instead of binding the entire document first.
+     * Sections other than PropertyTypes, ResourceTypes and ResourceSpecificationVersion are
+     * skipped.
+     */
+    public void streamSpecification(URL location, SpecificationListener listener) throws IOException {
+        streamSpecification(location.openStream(), listener);
+    }
+
+    public void streamSpecification(InputStream input, SpecificationListener listener) throws IOException {
+        try (Reader reader = openReader(input);
+             JsonParser parser = jsonFactory.createParser(reader)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Specification is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String section = parser.getCurrentName();
+                parser.nextToken();
+                switch (section) {
+                    case "ResourceSpecificationVersion":
+                        listener.version(parser.getValueAsString());
+                        break;
+
+                    case "PropertyTypes":
+                        readTypes(parser, listener::includePropertyType, listener::propertyType);
+                        listener.propertyTypesDone();
+                        break;
+
+                    case "ResourceTypes":
+                        readTypes(parser, listener::includeResourceType, listener::resourceType);
+                        break;
+
+                    default:
+                        parser.skipChildren();
                 }
             }
+        }
+    }
 
-            return mapperForJSON.readValue(reader, CfnSpecification.class);
+    private void readTypes(JsonParser parser,
+                           Predicate<String> include,
+                           BiConsumer<String, ResourceType> consumer) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expecting an object of types at " + parser.getCurrentLocation());
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (!include.test(name)) {
+                parser.skipChildren();
+                continue;
+            }
+            ResourceType type = mapperForJSON.readValue(parser, ResourceType.class);
+            consumer.accept(
+                interner != null ? interner.intern(name) : name,
+                interner != null ? interner.intern(type) : type);
         }
+    }
 
+    private Reader openReader(InputStream input) throws IOException {
+        return new InputStreamReader(SpecSource.decode(input), StandardCharsets.UTF_8);
     }
 
     public SingleCfnSpecification loadSingleResourceSpecification(URL location) throws IOException {
-        try (PushbackInputStream stream = new PushbackInputStream(location.openStream(), 8)) {
-            byte[] magic = new byte[4];
-            int nread = stream.read(magic);
-            if (nread < 4) {
-                throw new IOException("Can not read stream");
-            }
-            int magicNum =  0x01 << (int)magic[3] | 0x01 << (int)magic[2] |
-                            0x01 << (int)magic[2] | 0x01 << (int)magic[2];
-            Reader reader;
-            if (GZIPInputStream.GZIP_MAGIC == magicNum) {
-                stream.unread(magic);
-                reader = new InputStreamReader(new GZIPInputStream(stream), StandardCharsets.UTF_8);
-            }
-            else if (magicNum == 0x0403) {
-                stream.unread(magic);
-                reader = new InputStreamReader(new ZipInputStream(stream), StandardCharsets.UTF_8);
-            }
-            else {
-                stream.unread(magic);
-                reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
-            }
-            return mapperForJSON.readValue(reader, SingleCfnSpecification.class);
+        return loadSingleResourceSpecification(location.openStream());
+    }
+
+    public SingleCfnSpecification loadSingleResourceSpecification(InputStream input) throws IOException {
+        try (Reader reader = openReader(input)) {
+            SingleCfnSpecification spec = mapperForJSON.readValue(reader, SingleCfnSpecification.class);
+            if (interner != null) {
+                spec.setPropertyTypes(interner.intern(spec.getPropertyTypes()));
+                spec.setResourceType(interner.intern(spec.getResourceType()));
+            }
+            return spec;
+        }
+    }
+
+    /**
+     * Loads and validates many single resource specifications concurrently on the executor and
+     * merges them into one specification. The same type may come from several of them as long as
+     * every definition is identical, a type defined differently is a conflict. The merged
+     * specification carries the highest version of the ones loaded.
+     */
+    public CfnSpecification loadSingleResourceSpecifications(List<SpecSource> sources,
+                                                             Executor executor,
+                                                             SpecSource.Stats stats) throws IOException {
+        List<CompletableFuture<SingleCfnSpecification>> loaded = new ArrayList<>(sources.size());
+        for (SpecSource each: sources) {
+            loaded.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    SingleCfnSpecification single = loadSingleResourceSpecification(each.open(stats));
+                    single.validate();
+                    return single;
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException("Can not load " + each, e);
+                }
+                catch (CfnSpecificationException e) {
+                    throw new CfnSpecificationException("Invalid specification " + each + ", " + e.getMessage(), e);
+                }
+            }, executor));
+        }
+
+        CfnSpecification merged = new CfnSpecification();
+        Map<String, String> origins = new HashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            SingleCfnSpecification single;
+            try {
+                single = loaded.get(i).join();
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            String origin = sources.get(i).getName();
+            mergeTypes(merged.getPropertyTypes(), single.getPropertyTypes(), origins, origin);
+            mergeTypes(merged.getResourceTypes(), single.getResourceType(), origins, origin);
+            String version = single.getResourceSpecificationVersion();
+            if (compareVersions(version, merged.getResourceSpecificationVersion()) > 0) {
+                merged.setResourceSpecificationVersion(version);
+            }
+        }
+        return merged;
+    }
+
+    private static void mergeTypes(Map<String, ResourceType> into,
+                                   Map<String, ResourceType> types,
+                                   Map<String, String> origins,
+                                   String origin) {
+        types.forEach((name, type) -> {
+            ResourceType existing = into.putIfAbsent(name, type);
+            if (existing == null) {
+                origins.put(name, origin);
+            }
+            else if (!existing.equals(type)) {
+                throw new CfnSpecificationException("Type " + name + " is defined differently in " +
+                    origins.get(name) + " and " + origin);
+            }
+        });
+    }
+
+    /**
+     * Compares dotted versions like 14.1.0 numerically, null is lower than any version.
+     */
+    static int compareVersions(String first, String second) {
+        if (first == null || second == null) {
+            return first == null ? (second == null ? 0 : -1) : 1;
+        }
+        String[] left = first.split("\\."), right = second.split("\\.");
+        for (int i = 0; i < Math.max(left.length, right.length); i++) {
+            String l = i < left.length ? left[i] : "0", r = i < right.length ? right[i] : "0";
+            int diff;
+            try {
+                diff = Long.compare(Long.parseLong(l), Long.parseLong(r));
+            }
+            catch (NumberFormatException e) {
+                diff = l.compareTo(r);
+            }
+            if (diff != 0) {
+                return diff;
+            }
         }
+        return 0;
     }
 }
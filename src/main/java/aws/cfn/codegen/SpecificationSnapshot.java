@@ -0,0 +1,394 @@
+package aws.cfn.codegen;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact binary form of a parsed {@link CfnSpecification}. A snapshot is laid out as
+ * <pre>
+ *   header        magic, format, string count, version string, property type count, resource type count
+ *   string table  (count + 1) offsets followed by the UTF-8 bytes of every distinct string
+ *   type records  one fixed width record per type, property types then resource types, each sorted by name
+ *                 name, documentation, property count, attribute count, offset of first member record
+ *   members       one fixed width record per property or attribute
+ *                 name, type, item type, primitive type, primitive item type, documentation, update type, flags
+ * </pre>
+ * All values are big endian ints, strings are referenced by their index in the table and -1 stands for null.
+ * <p>
+ * {@link #read(Path)} memory maps the file and returns a specification whose type maps decode
+ * individual types from the mapping the first time they are asked for.
+ */
+public final class SpecificationSnapshot {
+
+    private static final int MAGIC = 0x43464E53; // CFNS
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 6 * 4;
+    private static final int TYPE_RECORD_SIZE = 5 * 4;
+    private static final int MEMBER_RECORD_SIZE = 8 * 4;
+    private static final int NULL = -1;
+
+    private SpecificationSnapshot() {}
+
+    public static void write(CfnSpecification specification, Path file) throws IOException {
+        StringTable strings = new StringTable();
+        List<String> propertyNames = sortedNames(specification.getPropertyTypes());
+        List<String> resourceNames = sortedNames(specification.getResourceTypes());
+        int version = strings.index(specification.getResourceSpecificationVersion());
+
+        // Type and member records are built first so that every string is in the table
+        ByteArrayOutputStream typeBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream memberBytes = new ByteArrayOutputStream();
+        DataOutputStream types = new DataOutputStream(typeBytes);
+        DataOutputStream members = new DataOutputStream(memberBytes);
+        List<Integer> memberOffsets = new ArrayList<>(propertyNames.size() + resourceNames.size());
+        writeTypes(propertyNames, specification.getPropertyTypes(), strings, types, members, memberOffsets);
+        writeTypes(resourceNames, specification.getResourceTypes(), strings, types, members, memberOffsets);
+
+        byte[] stringData = strings.data();
+        int stringTableSize = (strings.size() + 1) * 4 + stringData.length;
+        int membersStart = HEADER_SIZE + stringTableSize + typeBytes.size();
+
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), "snapshot", ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(strings.size());
+                out.writeInt(version);
+                out.writeInt(propertyNames.size());
+                out.writeInt(resourceNames.size());
+                for (int offset: strings.offsets()) {
+                    out.writeInt(offset);
+                }
+                out.write(stringData);
+                // Patch absolute member offsets into the type records as they are copied out
+                ByteBuffer records = ByteBuffer.wrap(typeBytes.toByteArray());
+                for (int i = 0; i < memberOffsets.size(); i++) {
+                    records.putInt(i * TYPE_RECORD_SIZE + 16, membersStart + memberOffsets.get(i));
+                }
+                out.write(records.array());
+                memberBytes.writeTo(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public static CfnSpecification read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a specification snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT) {
+            throw new IOException("Unsupported snapshot format " + buffer.getInt(4) + " in " + file);
+        }
+        Strings strings = new Strings(buffer, buffer.getInt(8));
+        int propertyCount = buffer.getInt(16);
+        int resourceCount = buffer.getInt(20);
+        int records = strings.end();
+
+        CfnSpecification specification = new CfnSpecification();
+        specification.setResourceSpecificationVersion(strings.get(buffer.getInt(12)));
+        specification.setPropertyTypes(new Types(buffer, strings, records, propertyCount));
+        specification.setResourceTypes(
+            new Types(buffer, strings, records + propertyCount * TYPE_RECORD_SIZE, resourceCount));
+        return specification;
+    }
+
+    private static List<String> sortedNames(Map<String, ResourceType> types) {
+        List<String> names = new ArrayList<>(types.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    private static void writeTypes(List<String> names,
+                                   Map<String, ResourceType> types,
+                                   StringTable strings,
+                                   DataOutputStream records,
+                                   DataOutputStream members,
+                                   List<Integer> memberOffsets) throws IOException {
+        for (String name: names) {
+            ResourceType type = types.get(name);
+            records.writeInt(strings.index(name));
+            records.writeInt(strings.index(type.getDocumentation()));
+            records.writeInt(type.getProperties().size());
+            records.writeInt(type.getAttributes().size());
+            records.writeInt(0); // patched with the absolute offset on write
+            memberOffsets.add(members.size());
+            for (Map.Entry<String, PropertyType> each: type.getProperties().entrySet()) {
+                PropertyType prop = each.getValue();
+                writeMember(members, strings, each.getKey(), prop,
+                    prop.getDocumentation(), prop.getUpdateType(),
+                    flag(prop.getDuplicatesAllowed()) | flag(prop.getRequired()) << 2);
+            }
+            for (Map.Entry<String, AttributeType> each: type.getAttributes().entrySet()) {
+                writeMember(members, strings, each.getKey(), each.getValue(), null, null, 0);
+            }
+        }
+    }
+
+    private static void writeMember(DataOutputStream members,
+                                    StringTable strings,
+                                    String name,
+                                    AttributeType type,
+                                    String documentation,
+                                    String updateType,
+                                    int flags) throws IOException {
+        members.writeInt(strings.index(name));
+        members.writeInt(strings.index(type.getType()));
+        members.writeInt(strings.index(type.getItemType()));
+        members.writeInt(strings.index(type.getPrimitiveType()));
+        members.writeInt(strings.index(type.getPrimitiveItemType()));
+        members.writeInt(strings.index(documentation));
+        members.writeInt(strings.index(updateType));
+        members.writeInt(flags);
+    }
+
+    private static int flag(Boolean value) {
+        return value == null ? 0 : value ? 2 : 1;
+    }
+
+    private static Boolean flag(int bits) {
+        return bits == 0 ? null : bits == 2;
+    }
+
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>(4096);
+        private final List<Integer> offsets = new ArrayList<>(4096);
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream(1 << 16);
+
+        int index(String value) {
+            if (value == null) {
+                return NULL;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = indexes.size();
+                indexes.put(value, index);
+                offsets.add(data.size());
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                data.write(bytes, 0, bytes.length);
+            }
+            return index;
+        }
+
+        int size() {
+            return indexes.size();
+        }
+
+        List<Integer> offsets() {
+            List<Integer> all = new ArrayList<>(offsets);
+            all.add(data.size());
+            return all;
+        }
+
+        byte[] data() {
+            return data.toByteArray();
+        }
+    }
+
+    /**
+     * String table view over the mapping, strings are decoded on first use.
+     */
+    private static final class Strings {
+        private final ByteBuffer buffer;
+        private final int count;
+        private final int dataStart;
+        private final AtomicReferenceArray<String> decoded;
+
+        Strings(ByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+            this.dataStart = HEADER_SIZE + (count + 1) * 4;
+            this.decoded = new AtomicReferenceArray<>(count);
+        }
+
+        String get(int index) {
+            if (index == NULL) {
+                return null;
+            }
+            String value = decoded.get(index);
+            if (value == null) {
+                int start = buffer.getInt(HEADER_SIZE + index * 4);
+                int end = buffer.getInt(HEADER_SIZE + (index + 1) * 4);
+                byte[] bytes = new byte[end - start];
+                ByteBuffer view = buffer.duplicate();
+                view.position(dataStart + start);
+                view.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+                decoded.set(index, value);
+            }
+            return value;
+        }
+
+        int end() {
+            return dataStart + buffer.getInt(HEADER_SIZE + count * 4);
+        }
+    }
+
+    /**
+     * Read-only map over a sorted run of type records. Lookups binary search the record names
+     * and a type is decoded the first time its value is requested.
+     */
+    private static final class Types extends AbstractMap<String, ResourceType> {
+        private final ByteBuffer buffer;
+        private final Strings strings;
+        private final int start;
+        private final int count;
+        private final AtomicReferenceArray<ResourceType> decoded;
+
+        Types(ByteBuffer buffer, Strings strings, int start, int count) {
+            this.buffer = buffer;
+            this.strings = strings;
+            this.start = start;
+            this.count = count;
+            this.decoded = new AtomicReferenceArray<>(count);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && find((String) key) >= 0;
+        }
+
+        @Override
+        public ResourceType get(Object key) {
+            int index = key instanceof String ? find((String) key) : -1;
+            return index >= 0 ? value(index) : null;
+        }
+
+        @Override
+        public Set<Entry<String, ResourceType>> entrySet() {
+            return new AbstractSet<Entry<String, ResourceType>>() {
+                @Override
+                public Iterator<Entry<String, ResourceType>> iterator() {
+                    return new Iterator<Entry<String, ResourceType>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < count;
+                        }
+
+                        @Override
+                        public Entry<String, ResourceType> next() {
+                            if (next >= count) {
+                                throw new NoSuchElementException();
+                            }
+                            final int index = next++;
+                            return new LazyEntry<String, ResourceType>(name(index)) {
+                                @Override
+                                public ResourceType getValue() {
+                                    return value(index);
+                                }
+                            };
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        private String name(int index) {
+            return strings.get(buffer.getInt(start + index * TYPE_RECORD_SIZE));
+        }
+
+        private int find(String key) {
+            int low = 0, high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = name(mid).compareTo(key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                }
+                else if (cmp > 0) {
+                    high = mid - 1;
+                }
+                else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private ResourceType value(int index) {
+            ResourceType type = decoded.get(index);
+            if (type == null) {
+                type = decode(start + index * TYPE_RECORD_SIZE);
+                decoded.set(index, type);
+            }
+            return type;
+        }
+
+        private ResourceType decode(int record) {
+            ResourceType type = new ResourceType();
+            type.setDocumentation(strings.get(buffer.getInt(record + 4)));
+            int properties = buffer.getInt(record + 8);
+            int attributes = buffer.getInt(record + 12);
+            int member = buffer.getInt(record + 16);
+            Map<String, PropertyType> props = new LinkedHashMap<>();
+            for (int i = 0; i < properties; i++, member += MEMBER_RECORD_SIZE) {
+                PropertyType prop = new PropertyType();
+                decodeMember(member, prop);
+                prop.setDocumentation(strings.get(buffer.getInt(member + 20)));
+                prop.setUpdateType(strings.get(buffer.getInt(member + 24)));
+                int flags = buffer.getInt(member + 28);
+                prop.setDuplicatesAllowed(flag(flags & 0x3));
+                prop.setRequired(flag(flags >> 2 & 0x3));
+                props.put(strings.get(buffer.getInt(member)), prop);
+            }
+            Map<String, AttributeType> attrs = new LinkedHashMap<>();
+            for (int i = 0; i < attributes; i++, member += MEMBER_RECORD_SIZE) {
+                AttributeType attr = new AttributeType();
+                decodeMember(member, attr);
+                attrs.put(strings.get(buffer.getInt(member)), attr);
+            }
+            type.setProperties(props);
+            type.setAttributes(attrs);
+            return type;
+        }
+
+        private void decodeMember(int member, AttributeType type) {
+            type.setType(strings.get(buffer.getInt(member + 4)));
+            type.setItemType(strings.get(buffer.getInt(member + 8)));
+            type.setPrimitiveType(strings.get(buffer.getInt(member + 12)));
+            type.setPrimitiveItemType(strings.get(buffer.getInt(member + 16)));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package aws.cfn.codegen;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Pool of strings shared by compact specifications. Documentation URLs are split at their last
+ * '/' so that the few distinct prefixes are held once and only the page part is per property.
+ * Pooled strings are held weakly. Instances are safe to use from multiple threads.
+ */
+public final class StringPool {
+
+    private final Interner<String> strings = Interners.newWeakInterner();
+
+    public String intern(String value) {
+        return value == null ? null : strings.intern(value);
+    }
+
+    /**
+     * @return the pooled prefix of the URL up to and including the last '/', null for null or
+     * values without one
+     */
+    public String urlBase(String url) {
+        int slash = url == null ? -1 : url.lastIndexOf('/');
+        return slash < 0 ? null : intern(url.substring(0, slash + 1));
+    }
+
+    /**
+     * @return the part of the URL after {@link #urlBase(String)}
+     */
+    public String urlPath(String url) {
+        int slash = url == null ? -1 : url.lastIndexOf('/');
+        return slash < 0 ? url : url.substring(slash + 1);
+    }
+}
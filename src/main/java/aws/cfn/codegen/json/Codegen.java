@@ -1,34 +1,73 @@
 package aws.cfn.codegen.json;
 
 import aws.cfn.codegen.CfnSpecification;
+import aws.cfn.codegen.CompactSpecification;
+import aws.cfn.codegen.MergedSpecification;
+import aws.cfn.codegen.PropertyType;
+import aws.cfn.codegen.ProviderSchemaLoader;
+import aws.cfn.codegen.ReferenceGraph;
 import aws.cfn.codegen.ResourceType;
 import aws.cfn.codegen.SingleCfnSpecification;
+import aws.cfn.codegen.SpecSource;
+import aws.cfn.codegen.SpecificationCache;
+import aws.cfn.codegen.SpecificationInterner;
+import aws.cfn.codegen.SpecificationListener;
 import aws.cfn.codegen.SpecificationLoader;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.github.mustachejava.DefaultMustacheFactory;
-import com.github.mustachejava.Mustache;
+import aws.cfn.codegen.SpecificationSnapshot;
+import aws.cfn.codegen.StringPool;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.filter.FilteringGeneratorDelegate;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -36,35 +75,212 @@ public final class Codegen {
 
     private static Logger logger = LogManager.getLogger(Codegen.class);
 
-    private final ObjectMapper mapper;
-    private final ObjectNode definitions;
+    /**
+     * Definitions are built and written this many at a time, so only a batch of serialized
+     * definitions is held in memory however large the specification.
+     */
+    private static final int DEFINITIONS_BATCH = 256;
+
     private final Config config;
+    private final List<SchemaVariant> variants;
+    private final SpecificationCache cache;
+    private final SpecificationInterner interner;
+    private final StringPool pool;
+    private final Map<String, SpecSource> mirror;
+    private final SpecSource.Stats stats = new SpecSource.Stats();
+    private final LongAdder loaded = new LongAdder();
+    private CfnSpecification registry;
+    private ForkJoinPool definitionBuilders;
+    private OutputStage output;
+    // Definitions by definitionKey, kept across regions when memoizing
+    private final Map<HashCode, List<byte[]>> memoizedResources = new ConcurrentHashMap<>();
+    private final Map<HashCode, Definition> memoizedProperties = new ConcurrentHashMap<>();
+    private final LongAdder built = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    // Regions having each type while generating the merged schemas, else null
+    private volatile MergedSpecification availability;
 
     public Codegen(Config config) throws IOException {
-        this.mapper = new ObjectMapper();
-        this.definitions = this.mapper.createObjectNode();
         this.config = Objects.requireNonNull(config);
+        Config.Settings settings = config.getSettings();
+        this.variants = settings.getVariants().isEmpty() ?
+            Collections.singletonList(new SchemaVariant(settings.getDraft(),
+                settings.getIncludeIntrinsics() != null && settings.getIncludeIntrinsics())) :
+            settings.getVariants().stream().map(SchemaVariant::parse).distinct().collect(Collectors.toList());
+        File cacheDir = config.getSettings().getCache();
+        this.cache = cacheDir != null ?
+            new SpecificationCache(cacheDir, config.getSettings().getOffline()) : null;
+        this.interner = config.getSettings().getIntern() ? new SpecificationInterner() : null;
+        this.pool = config.getSettings().getCompact() ? new StringPool() : null;
+        File sources = config.getSettings().getSources();
+        this.mirror = sources != null ? loadMirror(sources) : Collections.emptyMap();
+    }
+
+    /**
+     * Indexes the specifications of a local mirror by region. An entry belongs to the region named
+     * by its first directory, e.g. {@code us-east-1/CloudFormationResourceSpecification.json}, or
+     * else by its file name up to the first '.', e.g. {@code us-east-1.json.gz}.
+     */
+    private static Map<String, SpecSource> loadMirror(File sources) throws IOException {
+        Map<String, SpecSource> mirror = new HashMap<>();
+        for (SpecSource each: SpecSource.list(sources.toPath())) {
+            String name = each.getName();
+            int slash = name.indexOf('/');
+            String region = slash > 0 ? name.substring(0, slash) : name.split("\\.", 2)[0];
+            SpecSource existing = mirror.putIfAbsent(region, each);
+            if (existing != null) {
+                throw new IOException("Specification sources " + existing + " and " + each +
+                    " are both for region " + region);
+            }
+        }
+        logger.debug("Specification sources {} hold regions {}", sources, mirror.keySet());
+        return mirror;
+    }
+
+    /**
+     * @return the source of the specification of the region, the local mirror if it has it, else
+     * its configured location through the cache when there is one
+     */
+    private SpecSource specificationSource(String region) throws IOException {
+        SpecSource source = mirror.get(region);
+        if (source == null) {
+            URI cfnResourceSpecification = config.getSpecifications().get(region);
+            source = cache != null ?
+                SpecSource.of(cfnResourceSpecification.toString(), () -> cache.open(cfnResourceSpecification)) :
+                SpecSource.of(cfnResourceSpecification.toURL());
+        }
+        return source;
+    }
+
+    /**
+     * @return the decoded specification of the region
+     */
+    private byte[] fetchSpecification(String region) throws IOException {
+        return specificationSource(region).read(stats).getBytes();
+    }
+
+    /**
+     * Snapshot location for the raw specification bytes, named by their SHA-256 digest. Null when
+     * snapshots are not enabled.
+     */
+    private Path snapshotFile(String digest) {
+        File snapshots = config.getSettings().getSnapshots();
+        if (snapshots == null) {
+            return null;
+        }
+        String name = digest +
+            (config.getSettings().getSingle() ? "-single" : "") + ".snapshot";
+        return new File(snapshots, name).toPath();
     }
 
-    private CfnSpecification loadSpecification(String region) throws IOException {
+    /**
+     * @return true if regions are generated while their specification is read. Which groups
+     * changed is only known once the whole specification is in, and snapshots are named by the
+     * digest of the whole specification, so neither goes with streaming.
+     */
+    private boolean isStreamed() {
+        Config.Settings settings = config.getSettings();
+        return settings.getStreaming() && !settings.getSingle() && !settings.getIncremental() &&
+            settings.getSnapshots() == null;
+    }
+
+    private CfnSpecification loadSpecification(byte[] content, String digest) throws IOException {
+        loaded.increment();
+        Path snapshot = snapshotFile(digest);
+        if (snapshot != null && Files.exists(snapshot)) {
+            logger.debug("Using specification snapshot {}", snapshot);
+            return withRegistry(SpecificationSnapshot.read(snapshot));
+        }
+
         CfnSpecification spec;
-        Map<String, URI> regions = config.getSpecifications();
-        URI cfnResourceSpecification = regions.get(region);
         if (this.config.getSettings().getSingle()) {
-            SingleCfnSpecification single = new SpecificationLoader()
-                .loadSingleResourceSpecification(
-                    cfnResourceSpecification.toURL());
+            SingleCfnSpecification single = new SpecificationLoader(interner)
+                .loadSingleResourceSpecification(new ByteArrayInputStream(content));
+            single.validate();
             spec = new CfnSpecification();
             spec.setPropertyTypes(single.getPropertyTypes());
             spec.setResourceTypes(single.getResourceType());
             spec.setResourceSpecificationVersion(single.getResourceSpecificationVersion());
         }
+        else if (this.config.getSettings().getFilter()) {
+            spec = new SpecificationLoader(interner)
+                .loadSpecification(new ByteArrayInputStream(content), this::isLoaded);
+        }
         else {
-            spec = new SpecificationLoader()
-                .loadSpecification(cfnResourceSpecification.toURL());
+            spec = new SpecificationLoader(interner)
+                .loadSpecification(new ByteArrayInputStream(content));
         }
         spec.validate();
-        return spec;
+
+        // Filtered specifications are incomplete and never written as snapshots
+        if (snapshot != null && !this.config.getSettings().getFilter()) {
+            File dir = snapshot.getParent().toFile();
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Can not create snapshot directory " + dir);
+            }
+            SpecificationSnapshot.write(spec, snapshot);
+            logger.debug("Wrote specification snapshot {}", snapshot);
+        }
+        spec = withRegistry(spec);
+        return pool != null ? CompactSpecification.of(spec, pool).asSpecification() : spec;
+    }
+
+    /**
+     * In single resource mode a region located at a local directory or archive is a batch of
+     * single resource specifications that are generated together.
+     *
+     * @return the location of the batch, null if the region is not one
+     */
+    private Path batchLocation(String region) {
+        URI location = config.getSpecifications().get(region);
+        if (!config.getSettings().getSingle() || location == null || !"file".equals(location.getScheme())) {
+            return null;
+        }
+        Path path = Paths.get(location);
+        return SpecSource.isCollection(path) ? path : null;
+    }
+
+    /**
+     * Loads every single resource specification of the batch concurrently, using a thread per
+     * core, and merges them into one specification.
+     */
+    private CfnSpecification loadBatch(Path location) throws IOException {
+        ExecutorService loaders = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            CfnSpecification spec = new SpecificationLoader(interner)
+                .loadSingleResourceSpecifications(SpecSource.list(location), loaders, stats);
+            spec.validate();
+            spec = withRegistry(spec);
+            return pool != null ? CompactSpecification.of(spec, pool).asSpecification() : spec;
+        }
+        finally {
+            loaders.shutdownNow();
+        }
+    }
+
+    private CfnSpecification withRegistry(CfnSpecification spec) {
+        return registry != null ? ProviderSchemaLoader.merge(spec, registry) : spec;
+    }
+
+    /**
+     * Converts the configured registry provider schemas once for all regions, using a thread
+     * per core.
+     */
+    private void loadRegistry() throws IOException {
+        File schemas = config.getSettings().getRegistry();
+        if (schemas == null) {
+            return;
+        }
+        ExecutorService loaders = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            registry = new ProviderSchemaLoader(loaders).load(schemas.toPath());
+            if (interner != null) {
+                registry = interner.intern(registry);
+            }
+        }
+        finally {
+            loaders.shutdownNow();
+        }
     }
 
     private Map<String, File> loadGroupsOutputLocation(String region) throws IOException {
@@ -74,7 +290,7 @@ public final class Codegen {
             throw new IOException("Can not create out directory to write " + output);
         }
 
-        File parent = new File(output, region);
+        File parent = region.isEmpty() ? output : new File(output, region);
         if (!parent.exists() && !parent.mkdirs()) {
             throw new IOException("Can not create directory for region " + region
                 + " at " + parent);
@@ -91,199 +307,1317 @@ public final class Codegen {
         return groupSchemas;
     }
 
-    private Map<String, ObjectNode> loadGroupDefinitions() {
-        return config.getGroups().entrySet().stream().
-            collect(Collectors.toMap(
-                Map.Entry::getKey,
-                ign -> mapper.createObjectNode(),
-                (first, ign) -> first));
-    }
-
-    private String draft() {
-        return config.getSettings().getDraft().getLocation();
-    }
-
-    private void addToPerGroupRoots(Map<List<String>, ObjectNode> definitions,
-                                    Map<String, ObjectNode> groupSpecDefinitions) {
-        for (Map.Entry<List<String>, ObjectNode> each: definitions.entrySet()) {
-            List<String> key = each.getKey();
-            String name = key.get(0);
-            String defnName = key.get(1);
-            this.config.getGroups().entrySet().stream()
-                .filter(e -> e.getValue().isIncluded(name))
-                .map(e -> groupSpecDefinitions.get(e.getKey()))
-                .forEach(root -> root.replace(defnName, each.getValue()));
-        }
-    }
-
-    private void generatePerGroup(List<String> definitionNames,
-                                  Map<String, File> groupSchemas,
-                                  Map<String, ObjectNode> groupSpecDefinitions,
-                                  CfnSpecification specification) {
-
-        final Boolean includeIntrinsics = this.config.getSettings().getIncludeIntrinsics();
-        final String intrinsics = includeIntrinsics != null && includeIntrinsics ?
-            intrinsics() : "";
-
-        groupSpecDefinitions.entrySet().stream()
-            // Add resources block to each
-            .map(e -> {
-                ObjectNode definitions = e.getValue();
-
-                // Add alternative custom resources
-                ObjectNode customResource = definitions.putObject("altCustomResource");
-                customResource.put("type", "object");
-                ObjectNode custProperties = customResource.putObject("properties");
-                ObjectNode custType = custProperties.putObject("Type");
-                custType.put("type", "string");
-                custType.put("pattern", "Custom::[A-Za-z0-9]+");
-                custType.put("maxLength", 60);
-                ObjectNode custProp = custProperties.putObject("Properties");
-                custProp.put("type", "object");
-                ArrayNode required = customResource.putArray("required");
-                required.add("Type");
-                required.add("Properties");
-                customResource.put("additionalProperties", false);
-                addDependsOn(custProperties);
-
-                ObjectNode resourcesDefnSide = definitions.putObject("resources");
-                resourcesDefnSide.put("type", "object");
-                resourcesDefnSide.put("additionalProperties", false);
-                resourcesDefnSide.put("minProperties", 1);
-                ObjectNode patternProps = resourcesDefnSide.putObject("patternProperties");
-                ObjectNode resourceProps = patternProps.putObject("^[a-zA-Z0-9]{1,255}$");
-                ArrayNode anyOf = resourceProps.putArray("oneOf");
-                ObjectNode ref = anyOf.addObject();
-                ref.put("$ref", "#/definitions/altCustomResource");
-                for (String eachDefn: definitionNames) {
-                    if (definitions.has(eachDefn)) {
-                        ref = anyOf.addObject();
-                        ref.put("$ref", "#/definitions/" + eachDefn);
+    /**
+     * @return true if any group includes the resource or property type name, definitions are only
+     * built for these
+     */
+    private boolean isWanted(String name) {
+        return isWanted(name, config.getGroups().keySet());
+    }
+
+    /**
+     * @return true if any of the named groups includes the resource or property type name
+     */
+    private boolean isWanted(String name, Set<String> groups) {
+        for (String each: groups) {
+            if (config.getGroups().get(each).isIncluded(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the type is loaded when filtering. With pruning that is every property
+     * type, as the resource types of a group may reach any of them.
+     */
+    private boolean isLoaded(String name) {
+        return config.getSettings().getPrune() && ReferenceGraph.isPropertyTypeName(name) || isWanted(name);
+    }
+
+    /**
+     * @return the group schema files of the region for each variant, in the order of the variants.
+     * With variants configured each has its own directory in the region. The empty region is the
+     * output directory itself, where merged schemas go.
+     */
+    private List<Map<String, File>> loadVariantsOutputLocation(String region) throws IOException {
+        if (config.getSettings().getVariants().isEmpty()) {
+            return Collections.singletonList(loadGroupsOutputLocation(region));
+        }
+        List<Map<String, File>> locations = new ArrayList<>(variants.size());
+        for (SchemaVariant each: variants) {
+            locations.add(loadGroupsOutputLocation(
+                region.isEmpty() ? each.getName() : region + File.separator + each.getName()));
+        }
+        return locations;
+    }
+
+    /**
+     * @return the manifest of the region when generating incrementally, else null. The empty
+     * region is the output directory itself.
+     */
+    private File manifestLocation(String region) {
+        if (!config.getSettings().getIncremental()) {
+            return null;
+        }
+        File output = config.getSettings().getOutput();
+        return new File(region.isEmpty() ? output : new File(output, region), GenerationManifest.NAME);
+    }
+
+    /**
+     * @return the content manifest of the directory of the group schema files with canonical
+     * output, else null
+     */
+    private ContentManifest contentManifest(Map<String, File> groupSchemas) {
+        if (!config.getSettings().getCanonical() || groupSchemas.isEmpty()) {
+            return null;
+        }
+        return ContentManifest.of(groupSchemas.values().iterator().next().getParentFile().toPath());
+    }
+
+    /**
+     * @return a stream writing the file, through the content manifest of its directory when there
+     * is one and on the writer threads when there are any
+     */
+    private OutputStream openOutput(Path file, ContentManifest manifest) throws IOException {
+        if (manifest != null) {
+            return manifest.open(file.getFileName().toString(), output);
+        }
+        return output != null ? output.open(file) : Files.newOutputStream(file);
+    }
+
+    /**
+     * Copies the group schemas of the source region to the region having the same specification.
+     * When generating incrementally only the groups whose manifest entries differ between the two
+     * regions are copied, along with the manifest.
+     */
+    private void copyGroupsOutput(String source, String region) throws IOException {
+        List<Map<String, File>> from = loadVariantsOutputLocation(source);
+        List<Map<String, File>> to = loadVariantsOutputLocation(region);
+        Set<String> groups = config.getGroups().keySet();
+        File manifest = manifestLocation(source);
+        if (manifest != null) {
+            Path target = manifestLocation(region).toPath();
+            groups = changedGroups(GenerationManifest.read(manifest.toPath()), GenerationManifest.read(target), to);
+            if (groups.isEmpty()) {
+                logger.debug("Output for {} is up to date with {}", region, source);
+                return;
+            }
+            logger.debug("Copying groups {} of {} to {}", groups, source, region);
+        }
+        for (int i = 0; i < from.size(); i++) {
+            ContentManifest content = contentManifest(to.get(i));
+            for (String each: groups) {
+                Path file = from.get(i).get(each).toPath();
+                File target = to.get(i).get(each);
+                if (config.getSettings().getSplit()) {
+                    copyNamespaces(file.resolveSibling(each), target.toPath().resolveSibling(each));
+                }
+                copyFile(file, target.toPath(), content);
+            }
+            if (content != null) {
+                content.save();
+            }
+        }
+        if (manifest != null) {
+            Files.copy(manifest.toPath(), manifestLocation(region).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void copyFile(Path from, Path to, ContentManifest content) throws IOException {
+        if (content != null) {
+            content.copy(from, to.getFileName().toString(), output);
+        }
+        else {
+            Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Copies the namespace files of a split group schema, deleting those the source does not have.
+     */
+    private void copyNamespaces(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        ContentManifest content = config.getSettings().getCanonical() ? ContentManifest.of(to) : null;
+        Set<String> files = new HashSet<>();
+        try (DirectoryStream<Path> namespaces = Files.newDirectoryStream(from, "*.json")) {
+            for (Path each: namespaces) {
+                String name = each.getFileName().toString();
+                if (!name.equals(ContentManifest.NAME)) {
+                    copyFile(each, to.resolve(name), content);
+                    files.add(name);
+                }
+            }
+        }
+        SplitSchemaWriter.removeStale(to, files);
+        if (content != null) {
+            content.save();
+        }
+    }
+
+    /**
+     * A serialized definition of a type, a value per schema variant. With deduplication the
+     * definition of a property type can be an alias, a $ref to the structurally identical
+     * definition it has as target.
+     */
+    private static final class Definition {
+        private final String name;
+        private final String defnName;
+        private final List<byte[]> values;
+        private final HashCode structure;
+        private final Definition target;
+
+        Definition(String name, String defnName, List<byte[]> values, HashCode structure, Definition target) {
+            this.name = name;
+            this.defnName = defnName;
+            this.values = values;
+            this.structure = structure;
+            this.target = target;
+        }
+
+        Definition(String name, String defnName, List<byte[]> values) {
+            this(name, defnName, values, null, null);
+        }
+    }
+
+    /**
+     * Receives the serialized definitions of a specification, in order.
+     */
+    private interface Definitions {
+        void add(Definition definition) throws IOException;
+    }
+
+    /**
+     * The schema files of the groups of one region, each definition is written to the files of
+     * the groups that include it as soon as it is built. A definition is serialized once however
+     * many groups include it, as is the skeleton around the definitions. There is a file per
+     * group and schema variant, which groups have which definitions is the same for all variants.
+     */
+    private final class GroupSchemas implements Definitions, Closeable {
+        private final Map<GroupSpec, List<DefinitionsWriter>> writers = new LinkedHashMap<>();
+        private final List<ContentManifest> manifests = new ArrayList<>();
+        private final Map<GroupSpec, List<String>> resources = new HashMap<>();
+        private Map<GroupSpec, Set<String>> reachable;
+        private int serialized;
+        private int written;
+
+        /**
+         * Opens the schema files of the named groups, the files of other groups are left as they are.
+         */
+        GroupSchemas(List<Map<String, File>> groupSchemas, String version, Set<String> groups) throws IOException {
+            String description = "CFN JSON specification generated from version " + version;
+            try {
+                for (String each: groups) {
+                    writers.put(config.getGroups().get(each), new ArrayList<>(variants.size()));
+                }
+                for (int i = 0; i < variants.size(); i++) {
+                    SchemaVariant variant = variants.get(i);
+                    SchemaWriter.Skeleton skeleton =
+                        SchemaWriter.Skeleton.of(variant.getDraft(), variant.isIntrinsics(), description);
+                    ContentManifest manifest = contentManifest(groupSchemas.get(i));
+                    if (manifest != null) {
+                        manifests.add(manifest);
+                    }
+                    for (String each: groups) {
+                        Path file = groupSchemas.get(i).get(each).toPath();
+                        writers.get(config.getGroups().get(each)).add(config.getSettings().getSplit() ?
+                            splitWriter(each, file, skeleton, manifest) : new SchemaWriter(openOutput(file, manifest), skeleton));
                     }
                 }
-                return e;
-            })
-            // Write each output file
-            .forEach(e -> {
-                try {
-                    Map<String, Object> variables = new HashMap<>(5);
-                    variables.put("draft", draft());
-                    String res =
-                        mapper.writerWithDefaultPrettyPrinter().writeValueAsString(e.getValue());
-                    variables.put("intrinsics", intrinsics);
-                    variables.put("resources", res.substring(1, res.length() - 1));
-                    String description = "CFN JSON specification generated from version " +
-                        specification.getResourceSpecificationVersion();
-                    variables.put("description", description);
-                    Mustache cfnSchema = new DefaultMustacheFactory().compile("Schema.template");
-                    cfnSchema.execute(new OutputStreamWriter(
-                        new FileOutputStream(groupSchemas.get(e.getKey())),
-                        StandardCharsets.UTF_8
-                    ), variables).flush();
+            }
+            catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the writer of the root schema file of the group and its namespace files, which
+         * go to a directory named after the group next to it
+         */
+        private DefinitionsWriter splitWriter(String group,
+                                              Path file,
+                                              SchemaWriter.Skeleton skeleton,
+                                              ContentManifest manifest) throws IOException {
+            Path directory = Files.createDirectories(file.resolveSibling(group));
+            ContentManifest namespaces = config.getSettings().getCanonical() ? ContentManifest.of(directory) : null;
+            if (namespaces != null) {
+                manifests.add(namespaces);
+            }
+            SchemaWriter root = new SchemaWriter(openOutput(file, manifest), skeleton);
+            return new SplitSchemaWriter(group, file.getFileName().toString(), root, directory,
+                each -> openOutput(each, namespaces));
+        }
+
+        /**
+         * Writes the definition to every group that includes it, along with the target of an
+         * alias where the group does not have that yet.
+         */
+        @Override
+        public void add(Definition definition) throws IOException {
+            serialized++;
+            boolean property = ReferenceGraph.isPropertyTypeName(definition.name);
+            for (Map.Entry<GroupSpec, List<DefinitionsWriter>> each: writers.entrySet()) {
+                List<DefinitionsWriter> group = each.getValue();
+                boolean included = property && reachable != null ?
+                    reachable.get(each.getKey()).contains(definition.name) :
+                    each.getKey().isIncluded(definition.name);
+                if (!included || group.get(0).has(definition.defnName)) {
+                    continue;
                 }
-                catch (IOException ex) {
-                    throw new RuntimeException(ex);
+                if (!property) {
+                    resources.computeIfAbsent(each.getKey(), ign -> new ArrayList<>()).add(definition.name);
                 }
-            });
+                Definition target = definition.target;
+                if (target != null && !group.get(0).has(target.defnName)) {
+                    write(group, target.defnName, target.values);
+                }
+                write(group, definition.defnName, definition.values);
+            }
+        }
+
+        private void write(List<DefinitionsWriter> group, String defnName, List<byte[]> values) throws IOException {
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).definition(defnName, values.get(i));
+            }
+            written++;
+        }
+
+        /**
+         * From here on a group includes exactly the property types reachable from the resource
+         * definitions it has, whatever its patterns say.
+         */
+        void prune(ReferenceGraph graph) {
+            reachable = new HashMap<>(writers.size());
+            for (GroupSpec each: writers.keySet()) {
+                reachable.put(each, graph.reachable(resources.getOrDefault(each, Collections.emptyList())));
+            }
+        }
+
+        /**
+         * @return true if any group reaches the property type, only valid after pruning
+         */
+        boolean isReachable(String name) {
+            for (Set<String> each: reachable.values()) {
+                if (each.contains(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds the custom resource and resources definitions, the latter refers to each of the
+         * resource definitions a group has. These are the same for every variant.
+         */
+        void finish(List<String> resDefns) throws IOException {
+            byte[] customResource = customResourceDefinition();
+            Map<String, byte[]> fragments = new LinkedHashMap<>();
+            if (config.getSettings().getSharedFragments()) {
+                for (Map.Entry<String, Emitter> each: RESOURCE_FRAGMENTS.entrySet()) {
+                    fragments.put(SHARED_FRAGMENT_PREFIX + each.getKey(), serialize(each.getValue()));
+                }
+            }
+            for (List<DefinitionsWriter> group: writers.values()) {
+                byte[] resourcesDefn = resourcesDefinition(resDefns, group.get(0));
+                for (DefinitionsWriter each: group) {
+                    for (Map.Entry<String, byte[]> fragment: fragments.entrySet()) {
+                        each.definition(fragment.getKey(), fragment.getValue());
+                    }
+                    each.definition("altCustomResource", customResource);
+                    each.definition("resources", resourcesDefn);
+                }
+            }
+            logger.debug("Serialized {} definitions for {} group definitions", serialized, written);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException error = null;
+            for (List<DefinitionsWriter> group: writers.values()) {
+                for (DefinitionsWriter each: group) {
+                    try {
+                        each.close();
+                    }
+                    catch (IOException e) {
+                        if (error == null) {
+                            error = e;
+                        }
+                        else {
+                            error.addSuppressed(e);
+                        }
+                    }
+                }
+            }
+            // The manifests record whichever files made it
+            for (ContentManifest each: manifests) {
+                each.save();
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
     }
 
-    @SuppressWarnings("unchecked")
+    private byte[] customResourceDefinition() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonGenerator generator = SchemaWriter.valueGenerator(bytes)) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "object");
+            generator.writeObjectFieldStart("properties");
+            generator.writeObjectFieldStart("Type");
+            generator.writeStringField("type", "string");
+            generator.writeStringField("pattern", "Custom::[A-Za-z0-9]+");
+            generator.writeNumberField("maxLength", 60);
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("Properties");
+            generator.writeStringField("type", "object");
+            generator.writeEndObject();
+            writeResourceFragment(generator, "DependsOn");
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("required");
+            generator.writeString("Type");
+            generator.writeString("Properties");
+            generator.writeEndArray();
+            generator.writeBooleanField("additionalProperties", false);
+            generator.writeEndObject();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] resourcesDefinition(List<String> resDefns, DefinitionsWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonGenerator generator = SchemaWriter.valueGenerator(bytes)) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "object");
+            generator.writeBooleanField("additionalProperties", false);
+            generator.writeNumberField("minProperties", 1);
+            generator.writeObjectFieldStart("patternProperties");
+            generator.writeObjectFieldStart("^[a-zA-Z0-9]{1,255}$");
+            generator.writeArrayFieldStart("oneOf");
+            writeRef(generator, "altCustomResource");
+            for (String eachDefn: resDefns) {
+                if (writer.has(eachDefn)) {
+                    writeRef(generator, eachDefn);
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeRef(JsonGenerator generator, String defnName) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("$ref", "#/definitions/" + defnName);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Runs every region through fetch, parse and generate stages. Fetches and the parse/generate
+     * work each run on their own pool of {@code settings.threads} threads, so the next region
+     * downloads while the previous one generates. A failing region does not stop the others,
+     * all failures are reported once every region has finished. Within a region definitions are
+     * built on a fork/join pool of {@code settings.parallelism} threads when that is above 1.
+     * <p>
+     * Each distinct specification body is parsed and generated only once, regions serving
+     * byte-identical content get a copy of the output of the first such region. When streaming,
+     * a region is generated while its specification is read, so every region is generated.
+     * Registry provider schemas, when configured, are converted once up front and added to every
+     * region. In single resource mode a region located at a local directory or archive is loaded
+     * as a batch of single resource specifications merged into one.
+     */
     public void generate() throws Exception {
-        config.getSettings().getRegions().stream()
-            .map(region -> {
-                try {
-                    logger.debug("Loading specification for {}", region);
-                    return new Object[] {
-                        region,
-                        loadSpecification(region),
-                        loadGroupsOutputLocation(region),
-                        loadGroupDefinitions()
-                    };
+        loadRegistry();
+        Config.Settings settings = config.getSettings();
+        int threads = settings.getThreads();
+        ExecutorService fetchers = Executors.newFixedThreadPool(threads);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        definitionBuilders = settings.getParallelism() > 1 ? new ForkJoinPool(settings.getParallelism()) : null;
+        output = settings.getWriterThreads() > 0 ? new OutputStage(settings.getWriterThreads()) : null;
+        Map<String, Throwable> failures = new ConcurrentSkipListMap<>();
+        // SHA-256 of the specification bytes to the first region generated from them
+        Map<String, CompletableFuture<String>> distinct = new ConcurrentHashMap<>();
+        try {
+            if (settings.getMergeRegions()) {
+                generateMerged(fetchers, workers);
+                return;
+            }
+            List<CompletableFuture<Void>> regions = new ArrayList<>(settings.getRegions().size());
+            for (String region: settings.getRegions()) {
+                Path batch = batchLocation(region);
+                CompletableFuture<Void> generated;
+                if (batch != null) {
+                    generated = CompletableFuture.supplyAsync(
+                        supplier(() -> {
+                            logger.debug("Loading single resource specifications for {} from {}", region, batch);
+                            return loadBatch(batch);
+                        }), fetchers)
+                        .thenApplyAsync(stage(spec -> {
+                            generate(spec, loadVariantsOutputLocation(region), manifestLocation(region));
+                            return null;
+                        }), workers);
+                }
+                else if (isStreamed()) {
+                    generated = CompletableFuture.supplyAsync(
+                        supplier(() -> {
+                            logger.debug("Streaming specification for {}", region);
+                            String digest = generateStreaming(region);
+                            CompletableFuture<String> existing =
+                                distinct.putIfAbsent(digest, CompletableFuture.completedFuture(region));
+                            if (existing != null) {
+                                logger.debug("Specification for {} is identical to {}", region, existing.join());
+                            }
+                            return null;
+                        }), workers);
                 }
-                catch (Exception e) {
-                    logger.fatal(String.format("Loading specification for %s failed", region), e);
-                    throw new RuntimeException(e);
+                else {
+                    CompletableFuture<byte[]> fetched = CompletableFuture.supplyAsync(
+                        supplier(() -> {
+                            logger.debug("Fetching specification for {}", region);
+                            return fetchSpecification(region);
+                        }), fetchers);
+
+                    generated = fetched.thenComposeAsync(content -> {
+                        String digest = Hashing.sha256().hashBytes(content).toString();
+                        CompletableFuture<String> first = new CompletableFuture<>();
+                        CompletableFuture<String> existing = distinct.putIfAbsent(digest, first);
+                        if (existing != null) {
+                            // Same bytes as a region already being generated, reuse its output
+                            return existing.thenApplyAsync(stage(source -> {
+                                logger.debug("Specification for {} is identical to {}, copying output", region, source);
+                                copyGroupsOutput(source, region);
+                                return null;
+                            }), workers);
+                        }
+                        CompletableFuture<Void> own = CompletableFuture.completedFuture(content)
+                            .thenApplyAsync(stage(ign -> {
+                                logger.debug("Loading specification for {}", region);
+                                return loadSpecification(content, digest);
+                            }), workers)
+                            .thenApplyAsync(stage(spec -> {
+                                logger.debug("Starting generation for {} specification", region);
+                                generate(spec, loadVariantsOutputLocation(region), manifestLocation(region));
+                                return null;
+                            }), workers);
+                        own.whenComplete((ign, error) -> {
+                            if (error != null) {
+                                first.completeExceptionally(error);
+                            }
+                            else {
+                                first.complete(region);
+                            }
+                        });
+                        return own;
+                    }, workers);
                 }
-            })
-            .forEach(result -> {
-                String region = (String)result[0];
-                logger.debug("Starting generation for {} specification", region);
-                CfnSpecification spec = (CfnSpecification) result[1];
-                Map<String, File> locations = (Map<String, File>) result[2];
-                Map<String, ObjectNode> defns = (Map<String, ObjectNode>) result[3];
+                regions.add(generated.whenComplete((ign, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ?
+                            error.getCause() : error;
+                        logger.fatal(String.format("Generation for %s specification failed", region), cause);
+                        failures.put(region, cause);
+                    }
+                }));
+            }
+            CompletableFuture.allOf(regions.toArray(new CompletableFuture<?>[0]))
+                .exceptionally(ign -> null)
+                .join();
+        }
+        finally {
+            fetchers.shutdownNow();
+            workers.shutdownNow();
+            if (definitionBuilders != null) {
+                definitionBuilders.shutdownNow();
+            }
+            if (output != null) {
                 try {
-                    generate(spec, locations, defns);
+                    output.close();
                 }
-                catch (Exception e) {
-                    logger.fatal(String.format("Generation for %s specification failed", region), e);
-                    throw new RuntimeException(e);
+                catch (IOException e) {
+                    logger.error("Stopping the schema writers failed", e);
                 }
-            });
+            }
+        }
+        logger.debug("Specification sources {}", stats);
+        if (settings.getMemoize()) {
+            logger.debug("Built {} definitions, reused {}", built.sum(), reused.sum());
+        }
+
+        if (!failures.isEmpty()) {
+            RuntimeException error = new RuntimeException("Generation failed for regions " + failures.keySet());
+            failures.values().forEach(error::addSuppressed);
+            throw error;
+        }
+    }
+
+    /**
+     * @return the number of specifications loaded or streamed, once per distinct body
+     */
+    long loadedSpecifications() {
+        return loaded.sum();
+    }
+
+    /**
+     * @return the number of definitions built, memoized ones are built once for all regions
+     */
+    long builtDefinitions() {
+        return built.sum();
+    }
+
+    /**
+     * @return the number of definitions taken from the memoized ones instead of being built
+     */
+    long reusedDefinitions() {
+        return reused.sum();
+    }
+
+    /**
+     * Loads the specifications of all regions concurrently and generates one schema per group from
+     * their merge, in the output directory itself. Every definition lists the regions having its
+     * type in x-regions, a region missing from any specification fails the whole merge. With region
+     * overlays, the definitions a region has different from the merged ones are written to
+     * {@code <region>-overlay.json} next to the schemas, for the regions having any.
+     */
+    private void generateMerged(ExecutorService fetchers, ExecutorService workers) throws Exception {
+        Config.Settings settings = config.getSettings();
+        // SHA-256 of the specification bytes to the specification loaded from them
+        Map<String, CompletableFuture<CfnSpecification>> distinct = new ConcurrentHashMap<>();
+        Map<String, CompletableFuture<CfnSpecification>> loading = new TreeMap<>();
+        for (String region: settings.getRegions()) {
+            Path batch = batchLocation(region);
+            loading.put(region, batch != null ?
+                CompletableFuture.supplyAsync(supplier(() -> loadBatch(batch)), fetchers) :
+                CompletableFuture.supplyAsync(supplier(() -> fetchSpecification(region)), fetchers)
+                    .thenComposeAsync(content -> {
+                        String digest = Hashing.sha256().hashBytes(content).toString();
+                        return distinct.computeIfAbsent(digest, ign -> CompletableFuture.completedFuture(content)
+                            .thenApplyAsync(stage(bytes -> loadSpecification(bytes, digest)), workers));
+                    }, workers));
+        }
+        Map<String, CfnSpecification> specifications = new TreeMap<>();
+        Map<String, Throwable> failures = new TreeMap<>();
+        for (Map.Entry<String, CompletableFuture<CfnSpecification>> each: loading.entrySet()) {
+            try {
+                specifications.put(each.getKey(), each.getValue().join());
+            }
+            catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.fatal(String.format("Loading %s specification failed", each.getKey()), cause);
+                failures.put(each.getKey(), cause);
+            }
+        }
+        if (!failures.isEmpty()) {
+            RuntimeException error = new RuntimeException("Can not merge, loading failed for regions " + failures.keySet());
+            failures.values().forEach(error::addSuppressed);
+            throw error;
+        }
+
+        MergedSpecification merged = MergedSpecification.of(specifications);
+        logger.debug("Starting generation for merged specification of {}", specifications.keySet());
+        availability = merged;
+        try {
+            generate(merged.getSpecification(), loadVariantsOutputLocation(""), manifestLocation(""));
+        }
+        finally {
+            availability = null;
+        }
+        if (settings.getRegionOverlays()) {
+            for (Map.Entry<String, CfnSpecification> each: specifications.entrySet()) {
+                writeOverlay(each.getKey(), each.getValue(), merged.getDifferences(each.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Writes the definitions of the named types as the region has them, an object of definitions
+     * to replace in the merged schemas of a group where it has them.
+     */
+    private void writeOverlay(String region, CfnSpecification specification, Set<String> names) throws IOException {
+        if (names.isEmpty()) {
+            return;
+        }
+        Set<String> propertyNames = specification.getPropertyTypeNames();
+        File output = config.getSettings().getOutput();
+        List<SchemaWriter> writers = new ArrayList<>(variants.size());
+        List<ContentManifest> manifests = new ArrayList<>(variants.size());
+        try {
+            for (SchemaVariant each: variants) {
+                File dir = config.getSettings().getVariants().isEmpty() ? output : new File(output, each.getName());
+                ContentManifest manifest = config.getSettings().getCanonical() ? ContentManifest.of(dir.toPath()) : null;
+                if (manifest != null) {
+                    manifests.add(manifest);
+                }
+                writers.add(new SchemaWriter(openOutput(new File(dir, region + "-overlay.json").toPath(), manifest),
+                    SchemaWriter.Skeleton.OBJECT));
+            }
+            int written = 0;
+            for (String name: names) {
+                String defnName;
+                List<byte[]> values;
+                if (ReferenceGraph.isPropertyTypeName(name)) {
+                    if (!isLoaded(name)) {
+                        continue;
+                    }
+                    Definition definition = propertyDefinition(
+                        name, specification.getPropertyTypes().get(name), propertyNames);
+                    defnName = definition.defnName;
+                    values = definition.values;
+                }
+                else {
+                    defnName = name.replace("::", "_");
+                    values = isWanted(name) ?
+                        resourceDefinition(name, specification.getResourceTypes().get(name), propertyNames) : null;
+                }
+                if (values != null) {
+                    for (int i = 0; i < writers.size(); i++) {
+                        writers.get(i).definition(defnName, values.get(i));
+                    }
+                    written++;
+                }
+            }
+            logger.debug("Overlay for {} has {} definitions", region, written);
+        }
+        finally {
+            for (SchemaWriter each: writers) {
+                each.close();
+            }
+            for (ContentManifest each: manifests) {
+                each.save();
+            }
+        }
+    }
+
+    private interface Stage<T, R> {
+        R apply(T input) throws Exception;
     }
 
+    private static <T> Supplier<T> supplier(Callable<T> callable) {
+        return () -> stage((Void ign) -> callable.call()).apply(null);
+    }
+
+    private static <T, R> Function<T, R> stage(Stage<T, R> stage) {
+        return input -> {
+            try {
+                return stage.apply(input);
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /**
+     * Generates the group schemas of a specification. With a manifest only the groups whose types
+     * changed since it was written are generated, along with groups missing a schema file, and
+     * the manifest is rewritten once they are.
+     */
     private void generate(CfnSpecification specification,
-                          Map<String, File> groupSchemas,
-                          Map<String, ObjectNode> groupSpecDefinitions)
+                          List<Map<String, File>> groupSchemas,
+                          File manifest)
         throws Exception {
 
         final Map<String, ResourceType> resources = specification.getResourceTypes();
         final Map<String, ResourceType> properties = specification.getPropertyTypes();
-        final Set<String> propertyNames = properties.keySet();
+        final Set<String> propertyNames = specification.getPropertyTypeNames();
         final List<String> resDefns = new ArrayList<>(resources.size());
         List<String> sorted= new ArrayList<>(resources.keySet());
         Collections.sort(sorted);
+        sorted.forEach(name -> resDefns.add(name.replace("::", "_")));
+
+        Set<String> groups = config.getGroups().keySet();
+        Map<String, Map<String, String>> hashes = null;
+        if (manifest != null) {
+            hashes = manifestHashes(specification);
+            groups = changedGroups(hashes, GenerationManifest.read(manifest.toPath()), groupSchemas);
+            if (groups.isEmpty()) {
+                logger.debug("No group changed since {} was written", manifest);
+                return;
+            }
+            logger.debug("Regenerating groups {} of {}", groups, manifest.getParent());
+        }
+        Set<String> generated = groups;
+        try (GroupSchemas schemas = new GroupSchemas(groupSchemas, specification.getResourceSpecificationVersion(), groups)) {
+            Predicate<String> wanted = name -> isWanted(name, generated);
+            addResourceDefinitions(sorted, resources::get, propertyNames, wanted, schemas);
+            if (config.getSettings().getPrune()) {
+                schemas.prune(ReferenceGraph.of(specification));
+                wanted = schemas::isReachable;
+            }
+            sorted = new ArrayList<>(properties.keySet());
+            Collections.sort(sorted);
+            addPropertyDefinitions(sorted, properties::get, propertyNames, wanted, schemas);
+            schemas.finish(resDefns);
+        }
+        if (manifest != null) {
+            GenerationManifest.write(manifest.toPath(), hashes);
+        }
+    }
+
+    /**
+     * @return the key of each type going into each group, by group and type name, along with the
+     * key of the skeleton of the group schemas. With deduplication any property type can be the
+     * target of an alias, so every group depends on all of them.
+     */
+    private Map<String, Map<String, String>> manifestHashes(CfnSpecification specification) {
+        Config.Settings settings = config.getSettings();
+        String skeleton = Hashing.sha256().newHasher()
+            .putString(String.valueOf(specification.getResourceSpecificationVersion()), StandardCharsets.UTF_8)
+            .putString(variants.toString(), StandardCharsets.UTF_8)
+            .putBoolean(settings.getSharedFragments())
+            .putBoolean(settings.getSplit())
+            .hash().toString();
+        Map<String, ResourceType> properties = specification.getPropertyTypes();
+        Set<String> propertyNames = specification.getPropertyTypeNames();
+        ReferenceGraph graph = config.getSettings().getPrune() ? ReferenceGraph.of(specification) : null;
+        Map<String, String> keys = new HashMap<>();
+        Function<String, String> key = name -> keys.computeIfAbsent(name, ign -> {
+            boolean property = ReferenceGraph.isPropertyTypeName(name);
+            ResourceType type = property ? properties.get(name) : specification.getResourceTypes().get(name);
+            return String.valueOf(typeKey(!property, name, type, propertyNames));
+        });
+        Map<String, Map<String, String>> hashes = new TreeMap<>();
+        for (Map.Entry<String, GroupSpec> group: config.getGroups().entrySet()) {
+            Map<String, String> types = new TreeMap<>();
+            types.put(GenerationManifest.SKELETON, skeleton);
+            List<String> included = new ArrayList<>();
+            for (String each: specification.getResourceTypes().keySet()) {
+                if (group.getValue().isIncluded(each)) {
+                    included.add(each);
+                    types.put(each, key.apply(each));
+                }
+            }
+            Collection<String> reached = config.getSettings().getDeduplicate() ? properties.keySet() :
+                graph != null ? graph.reachable(included) :
+                properties.keySet().stream().filter(group.getValue()::isIncluded).collect(Collectors.toList());
+            reached.forEach(each -> types.put(each, key.apply(each)));
+            hashes.put(group.getKey(), types);
+        }
+        return hashes;
+    }
+
+    /**
+     * @return the names of the groups whose types differ from the manifest or that are missing a
+     * schema file, in the order of the groups
+     */
+    private Set<String> changedGroups(Map<String, Map<String, String>> hashes,
+                                      Map<String, Map<String, String>> manifest,
+                                      List<Map<String, File>> groupSchemas) {
+        Set<String> changed = new LinkedHashSet<>();
+        for (String each: config.getGroups().keySet()) {
+            boolean missing = groupSchemas.stream().anyMatch(files -> files.get(each).length() == 0);
+            if (missing || hashes.get(each) == null || !hashes.get(each).equals(manifest.get(each))) {
+                changed.add(each);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Parses the specification of the region as it is read and decoded, generating its group
+     * schemas on the way.
+     *
+     * @return the SHA-256 of the decoded specification
+     */
+    private String generateStreaming(String region) throws IOException {
+        loaded.increment();
+        HashingInputStream input = new HashingInputStream(Hashing.sha256(), specificationSource(region).open(stats));
+        try (StreamingGeneration generation = new StreamingGeneration(region)) {
+            new SpecificationLoader(interner).streamSpecification(input, generation);
+            generation.finish();
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        finally {
+            input.close();
+        }
+        return input.hash().toString();
+    }
 
-        Map<List<String>, ObjectNode> definitions = new LinkedHashMap<>(sorted.size());
-        for (final String name: sorted) {
-            ResourceType type = null;
+    /**
+     * Builds definitions as types arrive from {@link SpecificationLoader#streamSpecification}.
+     * Property types are only retained until the PropertyTypes section is complete, after that
+     * each resource type is validated, converted and written to the group schemas as soon as it
+     * is parsed and then dropped. Resource types that show up before the PropertyTypes section
+     * or the specification version are held back until both are in. With filtering enabled,
+     * types no group includes are skipped by the parser, only the names of skipped property
+     * types are kept so references to them resolve the same way.
+     * <p>
+     * Resource definitions are written in the order the specification lists its resource types,
+     * which is sorted for the published specifications, so the schemas are the same as when the
+     * specification is loaded first. Registry resource types are written in among them by name.
+     * The property definitions come after the resource definitions in a schema, they are the only
+     * definitions held until the end.
+     */
+    private final class StreamingGeneration implements SpecificationListener, Closeable {
+        private final String region;
+        private final boolean filter = config.getSettings().getFilter();
+        private final ReferenceGraph graph = config.getSettings().getPrune() ? new ReferenceGraph() : null;
+        private String version;
+        private Map<String, ResourceType> propertyTypes = new HashMap<>(256);
+        private final Set<String> skipped = new HashSet<>();
+        private Set<String> propertyNames;
+        private final Map<String, ResourceType> pending = new LinkedHashMap<>();
+        private final List<Definition> propertyDefinitions = new ArrayList<>(256);
+        // Registry resource types not written yet, by name
+        private final TreeMap<String, ResourceType> registryResources = new TreeMap<>();
+        private final SortedSet<String> resDefns = new TreeSet<>();
+        private GroupSchemas schemas;
+        private boolean finishing;
+
+        StreamingGeneration(String region) {
+            this.region = region;
+            if (registry != null) {
+                registry.getResourceTypes().forEach((name, type) -> {
+                    if (includeResourceType(name)) {
+                        registryResources.put(name, type);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void version(String resourceSpecificationVersion) {
+            this.version = resourceSpecificationVersion;
+            if (propertyNames != null) {
+                writePending();
+            }
+        }
+
+        @Override
+        public boolean includePropertyType(String name) {
+            if (!filter || isLoaded(name)) {
+                return true;
+            }
+            skipped.add(name);
+            return false;
+        }
+
+        @Override
+        public void propertyType(String name, ResourceType type) {
+            propertyTypes.put(name, type);
+        }
+
+        @Override
+        public void propertyTypesDone() {
+            if (registry != null) {
+                registry.getPropertyTypes().forEach((name, type) -> {
+                    if (!filter || isLoaded(name)) {
+                        propertyTypes.putIfAbsent(name, type);
+                    }
+                    else if (!propertyTypes.containsKey(name)) {
+                        skipped.add(name);
+                    }
+                });
+            }
+            List<String> sorted = new ArrayList<>(propertyTypes.keySet());
+            Collections.sort(sorted);
+            propertyNames = new HashSet<>(propertyTypes.keySet());
+            propertyNames.addAll(skipped);
+            if (graph != null) {
+                propertyTypes.forEach((name, type) -> graph.add(name, type, propertyNames));
+            }
             try {
-                type = resources.get(name);
-                String defnName = name.replace("::", "_");
-                resDefns.add(defnName);
-                ObjectNode typeDefn = mapper.createObjectNode();
-                handleType(typeDefn, defnName, name, type, true, propertyNames);
-                definitions.put(Arrays.asList(name, defnName), typeDefn);
-                logger.debug("Processed type {}", name);
-            }
-            catch (Exception e)
-            {
-                // ignore and emit warning for malformed types in the spec
-                if (type != null) {
-                    logger.error("An error occurred processing type {}", name);
+                // Which property types are reachable is only known once every resource type is in
+                addPropertyDefinitions(sorted, propertyTypes::get, propertyNames,
+                    graph != null ? ign -> true : Codegen.this::isWanted, propertyDefinitions::add);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            propertyTypes = null;
+            if (version != null) {
+                writePending();
+            }
+        }
+
+        @Override
+        public void resourceType(String name, ResourceType type) {
+            if (propertyNames == null || version == null && !finishing) {
+                pending.put(name, type);
+                return;
+            }
+            // The registry resource types before this one, and the one it replaces
+            SortedMap<String, ResourceType> before = registryResources.headMap(name, true);
+            before.remove(name);
+            try {
+                for (Map.Entry<String, ResourceType> each: before.entrySet()) {
+                    write(each.getKey(), each.getValue());
                 }
-                else {
-                    throw e;
+                before.clear();
+                write(name, type);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean includeResourceType(String name) {
+            return !filter || isWanted(name);
+        }
+
+        private void writePending() {
+            Map<String, ResourceType> held = new LinkedHashMap<>(pending);
+            pending.clear();
+            held.forEach(this::resourceType);
+        }
+
+        private void write(String name, ResourceType type) throws IOException {
+            CfnSpecification.validate(name, type, propertyNames);
+            if (graph != null) {
+                graph.add(name, type, propertyNames);
+            }
+            String defnName = name.replace("::", "_");
+            resDefns.add(defnName);
+            List<byte[]> values = isWanted(name) ? resourceDefinition(name, type, propertyNames) : null;
+            if (values != null) {
+                open().add(new Definition(name, defnName, values));
+            }
+        }
+
+        /**
+         * @return the group schemas of the region, created with the first definition written so
+         * a specification failing to parse before that leaves no files behind
+         */
+        private GroupSchemas open() throws IOException {
+            if (schemas == null) {
+                schemas = new GroupSchemas(loadVariantsOutputLocation(region), version, config.getGroups().keySet());
+            }
+            return schemas;
+        }
+
+        void finish() throws IOException {
+            if (propertyNames == null) {
+                // Specification without any PropertyTypes section
+                propertyTypesDone();
+            }
+            // Nor a version, the resource types held back for it go without
+            finishing = true;
+            writePending();
+            for (Map.Entry<String, ResourceType> each: registryResources.entrySet()) {
+                write(each.getKey(), each.getValue());
+            }
+            registryResources.clear();
+            GroupSchemas schemas = open();
+            if (graph != null) {
+                schemas.prune(graph);
+            }
+            for (Definition each: propertyDefinitions) {
+                schemas.add(each);
+            }
+            schemas.finish(new ArrayList<>(resDefns));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (schemas != null) {
+                schemas.close();
+            }
+        }
+    }
+
+    /**
+     * Serializes the definition of a resource type, null when the type is malformed. The
+     * definition is buffered so a type failing half way leaves nothing behind.
+     */
+    private List<byte[]> resourceDefinition(String name,
+                                            ResourceType type,
+                                            Set<String> propertyNames) {
+        HashCode key = definitionKey(true, name, type, propertyNames);
+        if (key == null) {
+            return buildResourceDefinition(name, type, propertyNames);
+        }
+        List<byte[]> typeDefn = memoizedResources.get(key);
+        if (typeDefn != null) {
+            reused.increment();
+            return typeDefn;
+        }
+        typeDefn = buildResourceDefinition(name, type, propertyNames);
+        if (typeDefn != null) {
+            memoizedResources.put(key, typeDefn);
+        }
+        return typeDefn;
+    }
+
+    private List<byte[]> buildResourceDefinition(String name,
+                                                 ResourceType type,
+                                                 Set<String> propertyNames) {
+        built.increment();
+        try {
+            List<byte[]> typeDefn = serializeVariants(generator ->
+                handleType(generator, name.replace("::", "_"), name, type, true, propertyNames, regions(name)));
+            logger.debug("Processed type {}", name);
+            return typeDefn;
+        }
+        catch (Exception e)
+        {
+            // ignore and emit warning for malformed types in the spec
+            if (type != null) {
+                logger.error("An error occurred processing type {}", name);
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Builds and adds the definitions of the wanted resource types, in the order of the names.
+     */
+    private void addResourceDefinitions(List<String> sorted,
+                                        Function<String, ResourceType> types,
+                                        Set<String> propertyNames,
+                                        Predicate<String> wanted,
+                                        Definitions definitions) throws IOException {
+        for (int from = 0; from < sorted.size(); from += DEFINITIONS_BATCH) {
+            List<String> names = sorted.subList(from, Math.min(sorted.size(), from + DEFINITIONS_BATCH));
+            List<List<byte[]>> built = buildDefinitions(names,
+                name -> wanted.test(name) ? resourceDefinition(name, types.apply(name), propertyNames) : null);
+            for (int i = 0; i < names.size(); i++) {
+                if (built.get(i) != null) {
+                    definitions.add(new Definition(names.get(i), names.get(i).replace("::", "_"), built.get(i)));
                 }
             }
         }
-        addToPerGroupRoots(definitions, groupSpecDefinitions);
+    }
 
-        sorted = new ArrayList<>(properties.keySet());
-        Collections.sort(sorted);
-        definitions = new LinkedHashMap<>(sorted.size());
-        for (final String name: sorted) {
-            ResourceType type = properties.get(name);
-            String[] parts = name.split("\\.");
+    /**
+     * Builds and adds the definitions of the wanted property types, in the order of the names.
+     * With deduplication, a definition structurally identical to an earlier one, descriptions
+     * aside, is added as an alias of the earlier one.
+     */
+    private void addPropertyDefinitions(List<String> sorted,
+                                        Function<String, ResourceType> types,
+                                        Set<String> propertyNames,
+                                        Predicate<String> wanted,
+                                        Definitions definitions) throws IOException {
+        Map<HashCode, Definition> structures = new HashMap<>();
+        int aliases = 0;
+        for (int from = 0; from < sorted.size(); from += DEFINITIONS_BATCH) {
+            List<String> names = sorted.subList(from, Math.min(sorted.size(), from + DEFINITIONS_BATCH));
+            List<Definition> built = buildDefinitions(names,
+                name -> wanted.test(name) ? propertyDefinition(name, types.apply(name), propertyNames) : null);
+            for (Definition each: built) {
+                if (each == null) {
+                    continue;
+                }
+                if (each.structure != null) {
+                    Definition target = structures.putIfAbsent(each.structure, each);
+                    if (target != null) {
+                        each = new Definition(each.name, each.defnName, Collections.nCopies(variants.size(),
+                            serialize(generator -> writeRef(generator, target.defnName))), null, target);
+                        aliases++;
+                    }
+                }
+                definitions.add(each);
+            }
+        }
+        if (aliases > 0) {
+            logger.debug("{} property type definitions are aliases of identical ones", aliases);
+        }
+    }
+
+    private static List<String> propertyDefinitionKey(String name) {
+        String[] parts = name.split("\\.");
+        // equals 1, no namespacing case
+        return parts.length > 1 ?
+            Arrays.asList(name, parts[0].replace("::", "_") + "_" + parts[1]) :
+            Arrays.asList(name, name.replace("::", "_"));
+    }
+
+    private Definition propertyDefinition(String name,
+                                          ResourceType type,
+                                          Set<String> propertyNames) {
+        HashCode key = definitionKey(false, name, type, propertyNames);
+        if (key == null) {
+            return buildPropertyDefinition(name, type, propertyNames);
+        }
+        Definition definition = memoizedProperties.get(key);
+        if (definition != null) {
+            reused.increment();
+            return definition;
+        }
+        definition = buildPropertyDefinition(name, type, propertyNames);
+        memoizedProperties.put(key, definition);
+        return definition;
+    }
+
+    /**
+     * Identifies the definition of the type by everything it is generated from: the kind and name
+     * of the type, its structural hash, how its references resolve and the output settings.
+     *
+     * @return the key, null when not memoizing or the type has no properties to go by
+     */
+    private HashCode definitionKey(boolean resource, String name, ResourceType type, Set<String> propertyNames) {
+        return config.getSettings().getMemoize() ? typeKey(resource, name, type, propertyNames) : null;
+    }
+
+    /**
+     * @return the key identifying the definition of the type, null when the type has no
+     * properties to go by
+     */
+    private HashCode typeKey(boolean resource, String name, ResourceType type, Set<String> propertyNames) {
+        Config.Settings settings = config.getSettings();
+        if (type == null || type.getProperties() == null) {
+            return null;
+        }
+        Hasher hasher = Hashing.sha256().newHasher()
+            .putBoolean(resource)
+            .putString(name, StandardCharsets.UTF_8)
+            .putBytes(type.structuralHash().asBytes())
+            .putString(variants.toString(), StandardCharsets.UTF_8)
+            .putBoolean(settings.getSharedFragments())
+            .putBoolean(settings.getDeduplicate())
+            .putBoolean(settings.getCanonical());
+        SortedSet<String> regions = regions(name);
+        if (regions != null) {
+            hasher.putString(regions.toString(), StandardCharsets.UTF_8);
+        }
+        type.getProperties().values().forEach(propType -> propType.getComplexType()
+            .ifPresent(cplx -> hasher.putBoolean(propertyNames.contains(cplx))));
+        return hasher.hash();
+    }
+
+    /**
+     * @return the regions having the type when generating merged schemas, else null
+     */
+    private SortedSet<String> regions(String name) {
+        MergedSpecification merged = availability;
+        return merged != null ? merged.getRegions(name) : null;
+    }
+
+    private Definition buildPropertyDefinition(String name,
+                                               ResourceType type,
+                                               Set<String> propertyNames) {
+        built.increment();
+        String[] parts = name.split("\\.");
+        String defnName = propertyDefinitionKey(name).get(1);
+        SortedSet<String> regions = regions(name);
+        DefinitionEmitter emitter = generator -> {
             if (parts.length > 1) {
-                String defnName = parts[0].replace("::", "_");
-                String propName = parts[1];
-                ObjectNode typeDefn = mapper.createObjectNode();
-                handleType(typeDefn, defnName, propName, type, false, propertyNames);
-                List<String> key = Arrays.asList(name, defnName + "_" + propName);
-                definitions.put(key, typeDefn);
+                handleType(generator, parts[0].replace("::", "_"), parts[1], type, false, propertyNames, regions);
             }
             else {
-                // equals 1, no namespacing case
-                String defnName = name.replace("::", "_");
-                ObjectNode typeDefn = mapper.createObjectNode();
-                handleType(typeDefn, defnName, defnName, type, false, propertyNames);
-                List<String> key = Arrays.asList(name, defnName);
-                definitions.put(key, typeDefn);
+                handleType(generator, defnName, defnName, type, false, propertyNames, regions);
+            }
+        };
+        return new Definition(name, defnName, serializeVariants(emitter),
+            config.getSettings().getDeduplicate() ? structure(emitter) : null, null);
+    }
+
+    /**
+     * Leaves out description keywords, the names of properties are kept whatever they are.
+     */
+    private static final class StructureFilter extends TokenFilter {
+        private static final StructureFilter KEYWORDS = new StructureFilter(false);
+        private static final StructureFilter PROPERTY_NAMES = new StructureFilter(true);
+
+        private final boolean propertyNames;
+
+        private StructureFilter(boolean propertyNames) {
+            this.propertyNames = propertyNames;
+        }
+
+        @Override
+        public TokenFilter includeProperty(String name) {
+            if (propertyNames) {
+                return KEYWORDS;
             }
+            if ("description".equals(name)) {
+                return null;
+            }
+            return "properties".equals(name) || "patternProperties".equals(name) ? PROPERTY_NAMES : KEYWORDS;
+        }
+
+        @Override
+        public boolean includeEmptyObject(boolean contentsFiltered) {
+            return true;
+        }
+
+        @Override
+        public boolean includeEmptyArray(boolean contentsFiltered) {
+            return true;
+        }
+    }
 
+    /**
+     * @return the SHA-256 of the compact serialized definition without descriptions
+     */
+    private HashCode structure(DefinitionEmitter emitter) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        try (VariantGenerators generator = new VariantGenerators(variants.subList(0, 1),
+                Collections.singletonList(new FilteringGeneratorDelegate(
+                    SchemaWriter.FACTORY.createGenerator(Funnels.asOutputStream(hasher)),
+                    StructureFilter.KEYWORDS, TokenFilter.Inclusion.INCLUDE_ALL_AND_PATH, true)))) {
+            emitter.emit(generator);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hasher.hash();
+    }
+
+    private interface Emitter {
+        void emit(JsonGenerator generator) throws IOException;
+    }
+
+    private static byte[] serialize(Emitter emitter) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (JsonGenerator generator = SchemaWriter.valueGenerator(bytes)) {
+            emitter.emit(generator);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface DefinitionEmitter {
+        void emit(VariantGenerators generator) throws IOException;
+    }
+
+    /**
+     * @return the serialized definition for each schema variant, in the order of the variants
+     */
+    private List<byte[]> serializeVariants(DefinitionEmitter emitter) {
+        try (VariantGenerators generator = VariantGenerators.buffered(variants)) {
+            emitter.emit(generator);
+            return generator.toByteArrays();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds the definition of each name, null where there is none. Definitions are independent
+     * of each other, with a parallelism above 1 they are built concurrently on a fork/join pool.
+     * The result is in the order of the names either way.
+     */
+    private <T> List<T> buildDefinitions(List<String> names, Function<String, T> builder) {
+        if (definitionBuilders == null) {
+            return names.stream().map(builder).collect(Collectors.toList());
+        }
+        try {
+            return definitionBuilders.submit(
+                () -> names.parallelStream().map(builder).collect(Collectors.toList())).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
         }
-        addToPerGroupRoots(definitions, groupSpecDefinitions);
-        generatePerGroup(resDefns, groupSchemas, groupSpecDefinitions, specification);
     }
 
     private final static Map<String, Supplier<String>> PrimitiveMappings =
@@ -300,164 +1634,241 @@ public final class Codegen {
 
         }};
 
-    private void addDependsOn(ObjectNode addTo) {
-        ObjectNode dependsOn = addTo.putObject("DependsOn");
-        ArrayNode dependsOnTypes = dependsOn.putArray("type");
-        dependsOnTypes.add("string");
-        dependsOnTypes.add("array");
-        ObjectNode items = dependsOn.putObject("items");
-        items.put("type", "string");
+    /**
+     * The blocks every resource definition has besides Type and Properties, by property name.
+     */
+    private static final Map<String, Emitter> RESOURCE_FRAGMENTS = new LinkedHashMap<>();
+    static {
+        for (String policyName: new String[]{"DeletionPolicy", "UpdateReplacePolicy"}) {
+            RESOURCE_FRAGMENTS.put(policyName, generator -> {
+                generator.writeStartObject();
+                generator.writeStringField("description", "https://docs.aws.amazon.com/AWSCloudFormation/latest/UserGuide/aws-attribute-" + policyName.toLowerCase() + ".html");
+                generator.writeStringField("type", "string");
+                generator.writeArrayFieldStart("enum");
+                generator.writeString("Delete");
+                generator.writeString("Retain");
+                generator.writeString("Snapshot");
+                generator.writeEndArray();
+                generator.writeEndObject();
+            });
+        }
+        for (String attributeName: new String[]{"Metadata", "CreationPolicy", "UpdatePolicy"}) {
+            RESOURCE_FRAGMENTS.put(attributeName, generator -> {
+                generator.writeStartObject();
+                generator.writeStringField("description", "https://docs.aws.amazon.com/AWSCloudFormation/latest/UserGuide/aws-attribute-" + attributeName.toLowerCase() + ".html");
+                generator.writeStringField("type", "object");
+                generator.writeEndObject();
+            });
+        }
+        RESOURCE_FRAGMENTS.put("DependsOn", generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("type");
+            generator.writeString("string");
+            generator.writeString("array");
+            generator.writeEndArray();
+            generator.writeObjectFieldStart("items");
+            generator.writeStringField("type", "string");
+            generator.writeEndObject();
+            generator.writeEndObject();
+        });
     }
 
-    private void handleType(ObjectNode typeDefn,
+    /**
+     * Definition names of the resource fragments when they are shared.
+     */
+    private static final String SHARED_FRAGMENT_PREFIX = "resource";
+
+    /**
+     * Writes the named resource fragment inline, or a $ref to its shared definition.
+     */
+    private void writeResourceFragment(JsonGenerator generator, String name) throws IOException {
+        generator.writeFieldName(name);
+        if (config.getSettings().getSharedFragments()) {
+            writeRef(generator, SHARED_FRAGMENT_PREFIX + name);
+        }
+        else {
+            RESOURCE_FRAGMENTS.get(name).emit(generator);
+        }
+    }
+
+    private void writeResourceFragment(VariantGenerators generator, String name) throws IOException {
+        if (config.getSettings().getSharedFragments()) {
+            generator.writeObjectFieldStart(name);
+            generator.writeStringField("$ref", "#/definitions/" + SHARED_FRAGMENT_PREFIX + name);
+            generator.writeEndObject();
+        }
+        else {
+            generator.each((each, variant) -> writeResourceFragment(each, name));
+        }
+    }
+
+    private static void writeRequired(JsonGenerator generator, List<String> required) throws IOException {
+        generator.writeArrayFieldStart("required");
+        for (String each: required) {
+            generator.writeString(each);
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeRequired(VariantGenerators generator, List<String> required) throws IOException {
+        generator.each((each, variant) -> writeRequired(each, required));
+    }
+
+    /**
+     * Writes the definition of a type for all schema variants at once, only primitive types
+     * differ between the variants. The regions having the type are listed when not null.
+     */
+    private void handleType(VariantGenerators generator,
                             String defnName,
                             String name,
                             ResourceType type,
                             boolean isResource,
-                            Set<String> propertyNames) {
-        typeDefn.put("type", "object");
-        typeDefn.put("description", type.getDocumentation());
-        ObjectNode properties, innerProps = null;
-        if (isResource) {
-            ObjectNode resProps = typeDefn.putObject("properties");
-            ObjectNode enumType = resProps.putObject("Type");
-            enumType.put("description", type.getDocumentation());
-            enumType.put("type", "string");
-            ArrayNode array = enumType.putArray("enum");
-            array.add(name);
-
-            for (String policyName: new String[]{"DeletionPolicy", "UpdateReplacePolicy"}) {
-                ObjectNode policy = resProps.putObject(policyName);
-                policy.put("description", "https://docs.aws.amazon.com/AWSCloudFormation/latest/UserGuide/aws-attribute-" + policyName.toLowerCase() + ".html");
-                policy.put("type", "string");
-                ArrayNode policyArray = policy.putArray("enum");
-                policyArray.add("Delete").add("Retain").add("Snapshot");
+                            Set<String> propertyNames,
+                            SortedSet<String> regions) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "object");
+        generator.writeStringField("description", type.getDocumentation());
+        if (regions != null) {
+            generator.writeArrayFieldStart("x-regions");
+            for (String each: regions) {
+                generator.writeString(each);
             }
+            generator.writeEndArray();
+        }
+        generator.writeObjectFieldStart("properties");
+        if (isResource) {
+            generator.writeObjectFieldStart("Type");
+            generator.writeStringField("description", type.getDocumentation());
+            generator.writeStringField("type", "string");
+            generator.writeArrayFieldStart("enum");
+            generator.writeString(name);
+            generator.writeEndArray();
+            generator.writeEndObject();
 
-            for (String attributeName: new String[]{"Metadata", "CreationPolicy", "UpdatePolicy"}) {
-                ObjectNode attribute = resProps.putObject(attributeName);
-                attribute.put("description", "https://docs.aws.amazon.com/AWSCloudFormation/latest/UserGuide/aws-attribute-" + attributeName.toLowerCase() + ".html");
-                attribute.put("type", "object");
+            for (String fragment: new String[]{"DeletionPolicy", "UpdateReplacePolicy",
+                                               "Metadata", "CreationPolicy", "UpdatePolicy"}) {
+                writeResourceFragment(generator, fragment);
             }
 
-            innerProps = resProps.putObject("Properties");
-            innerProps.put("type", "object");
-            properties = innerProps.putObject("properties");
-            // Add DependsOn
-            addDependsOn(resProps);
-        }
-        else {
-            properties = typeDefn.putObject("properties");
+            generator.writeObjectFieldStart("Properties");
+            generator.writeStringField("type", "object");
+            generator.writeObjectFieldStart("properties");
         }
         final List<String> required = new ArrayList<>(5);
-        type.getProperties().forEach(
-            (propName, propType) -> {
-                ObjectNode each = properties.putObject(propName);
-                if (propType.isObjectType()) {
-                    each.put("$ref", "#/definitions/" +
-                        (propertyNames.contains(propType.getType()) ? propType.getType() :
-                         defnName + "_" + propType.getType()));
-                }
-                else {
-                    each.put("description", propType.getDocumentation());
-                    if (propType.isPrimitive()) {
-                        addPrimitiveType(each, propType.getPrimitiveType());
-                    } else if (propType.isCollectionType()) {
-                        each.put("type", "array");
-                        ObjectNode itemType = each.putObject("items");
-                        if (propType.isContainerInnerTypePrimitive()) {
-                            addPrimitiveType(itemType, propType.getPrimitiveItemType());
-                        } else {
-                            itemType.put("$ref", "#/definitions/" +
-                                (propertyNames.contains(propType.getItemType()) ? propType.getItemType() :
-                                    defnName + "_" + propType.getItemType()));
-                        }
-                        Boolean duplicates = propType.getDuplicatesAllowed();
-                        if (duplicates != null && !duplicates) {
-                            each.put("uniqueItems", true);
-                        }
-                        each.put("minItems", 0);
+        Map<String, PropertyType> properties = config.getSettings().getCanonical() ?
+            new TreeMap<>(type.getProperties()) : type.getProperties();
+        for (Map.Entry<String, PropertyType> entry: properties.entrySet()) {
+            String propName = entry.getKey();
+            PropertyType propType = entry.getValue();
+            generator.writeObjectFieldStart(propName);
+            if (propType.isObjectType()) {
+                generator.writeStringField("$ref", "#/definitions/" +
+                    refName(defnName, propType.getType(), propertyNames));
+            }
+            else {
+                generator.writeStringField("description", propType.getDocumentation());
+                if (propType.isPrimitive()) {
+                    addPrimitiveType(generator, propType.getPrimitiveType());
+                } else if (propType.isCollectionType()) {
+                    generator.writeStringField("type", "array");
+                    generator.writeObjectFieldStart("items");
+                    if (propType.isContainerInnerTypePrimitive()) {
+                        addPrimitiveType(generator, propType.getPrimitiveItemType());
                     } else {
-                        // Map Type
-                        each.put("type", "object");
-                        ObjectNode mapProps = each.putObject("patternProperties");
-                        ObjectNode patPropKeyValue = mapProps.putObject("[a-zA-Z0-9]+");
-                        if (propType.isContainerInnerTypePrimitive()) {
-                            addPrimitiveType(patPropKeyValue, propType.getPrimitiveItemType());
-                        } else {
-                            patPropKeyValue.put("$ref", "#/definitions/" +
-                                (propertyNames.contains(propType.getItemType()) ? propType.getItemType() :
-                                    defnName + "_" + propType.getItemType()));
-                        }
+                        generator.writeStringField("$ref", "#/definitions/" +
+                            refName(defnName, propType.getItemType(), propertyNames));
+                    }
+                    generator.writeEndObject();
+                    Boolean duplicates = propType.getDuplicatesAllowed();
+                    if (duplicates != null && !duplicates) {
+                        generator.writeBooleanField("uniqueItems", true);
                     }
-                    Boolean requiredB = propType.getRequired();
-                    if (requiredB != null && requiredB) {
-                        required.add(propName);
+                    generator.writeNumberField("minItems", 0);
+                } else {
+                    // Map Type
+                    generator.writeStringField("type", "object");
+                    generator.writeObjectFieldStart("patternProperties");
+                    generator.writeObjectFieldStart("[a-zA-Z0-9]+");
+                    if (propType.isContainerInnerTypePrimitive()) {
+                        addPrimitiveType(generator, propType.getPrimitiveItemType());
+                    } else {
+                        generator.writeStringField("$ref", "#/definitions/" +
+                            refName(defnName, propType.getItemType(), propertyNames));
                     }
+                    generator.writeEndObject();
+                    generator.writeEndObject();
+                }
+                Boolean requiredB = propType.getRequired();
+                if (requiredB != null && requiredB) {
+                    required.add(propName);
                 }
             }
-        );
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
 
         if (isResource) {
             if (!required.isEmpty()) {
-                ArrayNode array = innerProps.putArray("required");
-                required.forEach(array::add);
-            }
-            innerProps.put("additionalProperties", false);
-            ArrayNode array = typeDefn.putArray("required");
-            array.add("Type");
-            if (!required.isEmpty()) {
-                array.add("Properties");
+                writeRequired(generator, required);
             }
+            generator.writeBooleanField("additionalProperties", false);
+            generator.writeEndObject();
+            writeResourceFragment(generator, "DependsOn");
+            generator.writeEndObject();
+            writeRequired(generator, required.isEmpty() ?
+                Collections.singletonList("Type") : Arrays.asList("Type", "Properties"));
         }
         else {
             if (!required.isEmpty()) {
-                ArrayNode array = typeDefn.putArray("required");
-                required.forEach(array::add);
+                writeRequired(generator, required);
             }
         }
-        typeDefn.put("additionalProperties", false);
+        generator.writeBooleanField("additionalProperties", false);
+        generator.writeEndObject();
+    }
+
+    /**
+     * @return the definition name the complex type of a property refers to, that of the property
+     * type of the name when there is one, top level or qualified, else the one namespaced like the
+     * definition of the property
+     */
+    private static String refName(String defnName, String type, Set<String> propertyNames) {
+        return propertyNames.contains(type) ? propertyDefinitionKey(type).get(1) : defnName + "_" + type;
+    }
+
+    private static void addPrimitiveType(VariantGenerators generator, String propType) throws IOException {
+        generator.each((each, variant) -> addPrimitiveType(each, variant, propType));
     }
 
-    private void addPrimitiveType(ObjectNode each, String propType) {
-        if (config.getSettings().getDraft() == SchemaDraft.draft07) {
+    private static void addPrimitiveType(JsonGenerator generator,
+                                         SchemaVariant variant,
+                                         String propType) throws IOException {
+        if (variant.getDraft() == SchemaDraft.draft07) {
             String type = PrimitiveMappings.get(propType).get();
 
-            if (config.getSettings().getIncludeIntrinsics()) {
+            if (variant.isIntrinsics()) {
                 if (!type.equals("string")) {
-                    ArrayNode types = each.putArray("anyOf");
-                    types.addObject().put("type", type);
-                    types.addObject().put("$ref", "#/definitions/Expression");
+                    generator.writeArrayFieldStart("anyOf");
+                    generator.writeStartObject();
+                    generator.writeStringField("type", type);
+                    generator.writeEndObject();
+                    writeRef(generator, "Expression");
+                    generator.writeEndArray();
                 } else {
-                    each.put("$ref", "#/definitions/Expression");
+                    generator.writeStringField("$ref", "#/definitions/Expression");
                 }
             } else {
-                ArrayNode types = each.putArray("type");
-                types.add(type);
+                generator.writeArrayFieldStart("type");
+                generator.writeString(type);
                 if (!type.equals("object")) {
-                    types.add("object");
+                    generator.writeString("object");
                 }
+                generator.writeEndArray();
             }
         }
         else {
-            each.put("type",
+            generator.writeStringField("type",
                 PrimitiveMappings.get(propType).get());
         }
     }
-
-    private String intrinsics() {
-        ClassLoader loader = Thread.currentThread().getContextClassLoader();
-        loader = loader == null ? getClass().getClassLoader() : loader;
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            InputStream is = loader.getResourceAsStream("Intrinsics.json");
-            JsonNode root = mapper.readTree(is);
-            String intrinsics = mapper.writer().withDefaultPrettyPrinter().writeValueAsString(root);
-            return intrinsics.substring(1, intrinsics.length() - 1).concat(",");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return "";
-    }
 }
@@ -6,7 +6,10 @@ import com.google.common.collect.Sets;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -39,6 +42,28 @@ public final class Config {
         private Set<String> regions;
         private boolean singleResourceSpec = false;
         private boolean includeIntrinsics = true;
+        private boolean streaming = false;
+        private File cacheDir;
+        private boolean offline = false;
+        private int threads = 1;
+        private boolean intern = false;
+        private File snapshotDir;
+        private boolean filter = false;
+        private boolean compact = false;
+        private File sources;
+        private File registry;
+        private int parallelism = 1;
+        private boolean sharedFragments = false;
+        private boolean deduplicate = false;
+        private boolean prune = false;
+        private boolean memoize = false;
+        private List<String> variants = new ArrayList<>();
+        private boolean mergeRegions = false;
+        private boolean regionOverlays = false;
+        private boolean incremental = false;
+        private boolean canonical = false;
+        private int writerThreads = 0;
+        private boolean split = false;
         private final Map<String, URI> regionSpecs = new LinkedHashMap<>(12);
         private final Map<String, GroupSpec> groups = new LinkedHashMap<>(5);
 
@@ -58,6 +83,28 @@ public final class Config {
                 this.singleResourceSpec = settings.getSingle() != null ? settings.getSingle() : this.singleResourceSpec;
                 this.includeIntrinsics = settings.getIncludeIntrinsics() != null ? settings.getIncludeIntrinsics() :
                     this.includeIntrinsics;
+                this.streaming = settings.getStreaming() != null ? settings.getStreaming() : this.streaming;
+                this.cacheDir = settings.getCache() != null ? settings.getCache() : this.cacheDir;
+                this.offline = settings.getOffline() != null ? settings.getOffline() : this.offline;
+                this.threads = settings.getThreads() != null ? settings.getThreads() : this.threads;
+                this.intern = settings.getIntern() != null ? settings.getIntern() : this.intern;
+                this.snapshotDir = settings.getSnapshots() != null ? settings.getSnapshots() : this.snapshotDir;
+                this.filter = settings.getFilter() != null ? settings.getFilter() : this.filter;
+                this.compact = settings.getCompact() != null ? settings.getCompact() : this.compact;
+                this.sources = settings.getSources() != null ? settings.getSources() : this.sources;
+                this.registry = settings.getRegistry() != null ? settings.getRegistry() : this.registry;
+                this.parallelism = settings.getParallelism() != null ? settings.getParallelism() : this.parallelism;
+                this.sharedFragments = settings.getSharedFragments() != null ? settings.getSharedFragments() : this.sharedFragments;
+                this.deduplicate = settings.getDeduplicate() != null ? settings.getDeduplicate() : this.deduplicate;
+                this.prune = settings.getPrune() != null ? settings.getPrune() : this.prune;
+                this.memoize = settings.getMemoize() != null ? settings.getMemoize() : this.memoize;
+                this.variants = settings.getVariants() != null ? settings.getVariants() : this.variants;
+                this.mergeRegions = settings.getMergeRegions() != null ? settings.getMergeRegions() : this.mergeRegions;
+                this.regionOverlays = settings.getRegionOverlays() != null ? settings.getRegionOverlays() : this.regionOverlays;
+                this.incremental = settings.getIncremental() != null ? settings.getIncremental() : this.incremental;
+                this.canonical = settings.getCanonical() != null ? settings.getCanonical() : this.canonical;
+                this.writerThreads = settings.getWriterThreads() != null ? settings.getWriterThreads() : this.writerThreads;
+                this.split = settings.getSplit() != null ? settings.getSplit() : this.split;
             }
             this.regionSpecs.putAll(other.getSpecifications());
             this.groups.putAll(other.getGroups());
@@ -110,6 +157,116 @@ public final class Config {
             return this;
         }
 
+        public Builder withStreaming(boolean streaming) {
+            this.streaming = streaming;
+            return this;
+        }
+
+        public Builder withCacheDirectory(File dir) {
+            this.cacheDir = dir;
+            return this;
+        }
+
+        public Builder isOffline(boolean offline) {
+            this.offline = offline;
+            return this;
+        }
+
+        public Builder withThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder withInterning(boolean intern) {
+            this.intern = intern;
+            return this;
+        }
+
+        public Builder withSnapshotDirectory(File dir) {
+            this.snapshotDir = dir;
+            return this;
+        }
+
+        public Builder withGroupFilter(boolean filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public Builder withCompactModel(boolean compact) {
+            this.compact = compact;
+            return this;
+        }
+
+        public Builder withSpecificationSources(File sources) {
+            this.sources = sources;
+            return this;
+        }
+
+        public Builder withRegistrySchemas(File registry) {
+            this.registry = registry;
+            return this;
+        }
+
+        public Builder withParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder withSharedFragments(boolean sharedFragments) {
+            this.sharedFragments = sharedFragments;
+            return this;
+        }
+
+        public Builder withDeduplication(boolean deduplicate) {
+            this.deduplicate = deduplicate;
+            return this;
+        }
+
+        public Builder withPruning(boolean prune) {
+            this.prune = prune;
+            return this;
+        }
+
+        public Builder withMemoizedDefinitions(boolean memoize) {
+            this.memoize = memoize;
+            return this;
+        }
+
+        public Builder withVariants(List<String> variants) {
+            this.variants = Objects.requireNonNull(variants);
+            return this;
+        }
+
+        public Builder withMergedRegions(boolean mergeRegions) {
+            this.mergeRegions = mergeRegions;
+            return this;
+        }
+
+        public Builder withRegionOverlays(boolean regionOverlays) {
+            this.regionOverlays = regionOverlays;
+            return this;
+        }
+
+        public Builder withIncrementalGeneration(boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+
+        public Builder withCanonicalOutput(boolean canonical) {
+            this.canonical = canonical;
+            return this;
+        }
+
+        public Builder withWriterThreads(int writerThreads) {
+            this.writerThreads = writerThreads;
+            return this;
+        }
+
+        public Builder withSplitOutput(boolean split) {
+            this.split = split;
+            return this;
+        }
+
         public Builder withGroup(String grpName, GroupSpec spec) {
             groups.put(grpName, spec);
             return this;
@@ -123,7 +280,29 @@ public final class Config {
                     regions,
                     outputDir,
                     singleResourceSpec,
-                    includeIntrinsics
+                    includeIntrinsics,
+                    streaming,
+                    cacheDir,
+                    offline,
+                    threads,
+                    intern,
+                    snapshotDir,
+                    filter,
+                    compact,
+                    sources,
+                    registry,
+                    parallelism,
+                    sharedFragments,
+                    deduplicate,
+                    prune,
+                    memoize,
+                    variants,
+                    mergeRegions,
+                    regionOverlays,
+                    incremental,
+                    canonical,
+                    writerThreads,
+                    split
                 ),
                 groups
             );
@@ -140,18 +319,100 @@ public final class Config {
         private final File output;
         private final Boolean single;
         private final Boolean includeIntrinsics;
+        private final Boolean streaming;
+        private final File cache;
+        private final Boolean offline;
+        private final Integer threads;
+        private final Boolean intern;
+        private final File snapshots;
+        private final Boolean filter;
+        private final Boolean compact;
+        private final File sources;
+        private final File registry;
+        private final Integer parallelism;
+        private final Boolean sharedFragments;
+        private final Boolean deduplicate;
+        private final Boolean prune;
+        private final Boolean memoize;
+        private final List<String> variants;
+        private final Boolean mergeRegions;
+        private final Boolean regionOverlays;
+        private final Boolean incremental;
+        private final Boolean canonical;
+        private final Integer writerThreads;
+        private final Boolean split;
 
         @JsonCreator
         public Settings(@JsonProperty("draft") SchemaDraft draft,
                         @JsonProperty("regions") Set<String> regions,
                         @JsonProperty("output") File output,
                         @JsonProperty("single") Boolean single,
-                        @JsonProperty("intrinsics") Boolean includeIntrinsics) {
+                        @JsonProperty("intrinsics") Boolean includeIntrinsics,
+                        @JsonProperty("streaming") Boolean streaming,
+                        @JsonProperty("cache") File cache,
+                        @JsonProperty("offline") Boolean offline,
+                        @JsonProperty("threads") Integer threads,
+                        @JsonProperty("intern") Boolean intern,
+                        @JsonProperty("snapshots") File snapshots,
+                        @JsonProperty("filter") Boolean filter,
+                        @JsonProperty("compact") Boolean compact,
+                        @JsonProperty("sources") File sources,
+                        @JsonProperty("registry") File registry,
+                        @JsonProperty("parallelism") Integer parallelism,
+                        @JsonProperty("sharedFragments") Boolean sharedFragments,
+                        @JsonProperty("deduplicate") Boolean deduplicate,
+                        @JsonProperty("prune") Boolean prune,
+                        @JsonProperty("memoize") Boolean memoize,
+                        @JsonProperty("variants") List<String> variants,
+                        @JsonProperty("mergeRegions") Boolean mergeRegions,
+                        @JsonProperty("regionOverlays") Boolean regionOverlays,
+                        @JsonProperty("incremental") Boolean incremental,
+                        @JsonProperty("canonical") Boolean canonical,
+                        @JsonProperty("writerThreads") Integer writerThreads,
+                        @JsonProperty("split") Boolean split) {
             this.draft = draft;
             this.regions = regions == null ? Sets.newHashSet("us-east-1") : regions;
             this.output = output;
             this.single = single == null ? false : single;
             this.includeIntrinsics = includeIntrinsics == null ? false : includeIntrinsics;
+            this.streaming = streaming == null ? false : streaming;
+            this.cache = cache;
+            this.offline = offline == null ? false : offline;
+            if (this.offline && cache == null) {
+                throw new IllegalArgumentException("Offline mode requires a cache directory");
+            }
+            this.threads = threads == null ? 1 : threads;
+            if (this.threads < 1) {
+                throw new IllegalArgumentException("threads must be at least 1, got " + threads);
+            }
+            this.intern = intern == null ? false : intern;
+            this.snapshots = snapshots;
+            this.filter = filter == null ? false : filter;
+            this.compact = compact == null ? false : compact;
+            this.sources = sources;
+            this.registry = registry;
+            this.parallelism = parallelism == null ? 1 : parallelism;
+            if (this.parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be at least 1, got " + parallelism);
+            }
+            this.sharedFragments = sharedFragments == null ? false : sharedFragments;
+            this.deduplicate = deduplicate == null ? false : deduplicate;
+            this.prune = prune == null ? false : prune;
+            this.memoize = memoize == null ? false : memoize;
+            this.variants = variants == null ? Collections.emptyList() : variants;
+            this.variants.forEach(SchemaVariant::parse);
+            this.mergeRegions = mergeRegions == null ? false : mergeRegions;
+            this.regionOverlays = regionOverlays == null ? false : regionOverlays;
+            if (this.regionOverlays && !this.mergeRegions) {
+                throw new IllegalArgumentException("Region overlays require merged regions");
+            }
+            this.incremental = incremental == null ? false : incremental;
+            this.canonical = canonical == null ? false : canonical;
+            this.writerThreads = writerThreads == null ? 0 : writerThreads;
+            if (this.writerThreads < 0) {
+                throw new IllegalArgumentException("writerThreads must not be negative, got " + writerThreads);
+            }
+            this.split = split == null ? false : split;
         }
     }
 
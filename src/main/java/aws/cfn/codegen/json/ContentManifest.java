@@ -0,0 +1,197 @@
+package aws.cfn.codegen.json;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteStreams;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The SHA-256 and size of each schema file in a directory, kept in content-manifest.json next to
+ * them. A file is written to a temporary file first and only moved in place when its content
+ * differs from what the file has, so an unchanged file keeps its modification time.
+ */
+final class ContentManifest {
+
+    private static Logger logger = LogManager.getLogger(ContentManifest.class);
+
+    static final String NAME = "content-manifest.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .enable(SerializationFeature.INDENT_OUTPUT);
+
+    static final class Entry {
+        private final String sha256;
+        private final long size;
+
+        @JsonCreator
+        Entry(@JsonProperty("sha256") String sha256, @JsonProperty("size") long size) {
+            this.sha256 = sha256;
+            this.size = size;
+        }
+
+        @JsonProperty("sha256")
+        public String getSha256() {
+            return sha256;
+        }
+
+        @JsonProperty("size")
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return size == other.size && sha256.equals(other.sha256);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sha256, size);
+        }
+    }
+
+    private final Path directory;
+    private final Map<String, Entry> entries;
+    private boolean changed;
+    private int unchanged;
+
+    private ContentManifest(Path directory, Map<String, Entry> entries) {
+        this.directory = directory;
+        this.entries = entries;
+    }
+
+    /**
+     * @return the manifest of the directory, empty when it has none or it can not be read
+     */
+    static ContentManifest of(Path directory) {
+        Path manifest = directory.resolve(NAME);
+        Map<String, Entry> entries = new TreeMap<>();
+        if (Files.exists(manifest)) {
+            try {
+                entries.putAll(MAPPER.readValue(manifest.toFile(), new TypeReference<Map<String, Entry>>() {}));
+            }
+            catch (IOException e) {
+                // Files are hashed again as they are written
+                logger.warn("Ignoring unreadable content manifest {}", manifest);
+            }
+        }
+        return new ContentManifest(directory, entries);
+    }
+
+    /**
+     * @return a stream writing the file of the directory, closing it moves the content in place
+     * unless the file already has it. The content goes through the output stage when not null.
+     */
+    OutputStream open(String name, OutputStage stage) throws IOException {
+        Path temp = directory.resolve(name + ".tmp");
+        HashingOutputStream hashing = new HashingOutputStream(Hashing.sha256(),
+            stage != null ? stage.open(temp) : Files.newOutputStream(temp));
+        return new FilterOutputStream(hashing) {
+            private long size;
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                size++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                size += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                super.close();
+                commit(name, temp, new Entry(hashing.hash().toString(), size));
+            }
+        };
+    }
+
+    /**
+     * Copies the file into the directory under the name, the same way as writing it.
+     */
+    void copy(Path from, String name, OutputStage stage) throws IOException {
+        try (InputStream in = Files.newInputStream(from);
+             OutputStream out = open(name, stage)) {
+            ByteStreams.copy(in, out);
+        }
+    }
+
+    private synchronized void commit(String name, Path temp, Entry entry) throws IOException {
+        if (hasContent(name, entry)) {
+            Files.delete(temp);
+            if (!entry.equals(entries.put(name, entry))) {
+                changed = true;
+            }
+            unchanged++;
+            return;
+        }
+        Files.move(temp, directory.resolve(name),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        entries.put(name, entry);
+        changed = true;
+    }
+
+    /**
+     * @return true if the file of the directory has the content of the entry. The file is hashed
+     * whatever the manifest says, as it may have been changed since the manifest was written.
+     */
+    private boolean hasContent(String name, Entry entry) throws IOException {
+        Path file = directory.resolve(name);
+        if (!Files.exists(file) || Files.size(file) != entry.size) {
+            return false;
+        }
+        Hasher hasher = Hashing.sha256().newHasher();
+        try (InputStream in = Files.newInputStream(file)) {
+            ByteStreams.copy(in, Funnels.asOutputStream(hasher));
+        }
+        return hasher.hash().toString().equals(entry.sha256);
+    }
+
+    /**
+     * Writes the manifest when any entry changed, leaving out files that have been deleted.
+     */
+    synchronized void save() throws IOException {
+        logger.debug("{} files of {} unchanged", unchanged, directory);
+        if (entries.keySet().removeIf(name -> !Files.exists(directory.resolve(name)))) {
+            changed = true;
+        }
+        if (!changed) {
+            return;
+        }
+        Path temp = directory.resolve(NAME + ".tmp");
+        MAPPER.writeValue(temp.toFile(), entries);
+        Files.move(temp, directory.resolve(NAME), StandardCopyOption.REPLACE_EXISTING);
+        changed = false;
+    }
+}
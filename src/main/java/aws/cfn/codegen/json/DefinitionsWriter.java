@@ -0,0 +1,17 @@
+package aws.cfn.codegen.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the serialized definitions of one group schema.
+ */
+interface DefinitionsWriter extends Closeable {
+
+    /**
+     * Adds the definition, the value is the serialized form from a {@link SchemaWriter#valueGenerator}.
+     */
+    void definition(String name, byte[] value) throws IOException;
+
+    boolean has(String name);
+}
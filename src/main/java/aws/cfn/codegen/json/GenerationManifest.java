@@ -0,0 +1,56 @@
+package aws.cfn.codegen.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The types that went into the group schemas of a region, by group name and then type name, each
+ * with the hash of everything its definition is generated from. Written after a region is
+ * generated and compared against on the next run to find the groups that need regenerating.
+ */
+final class GenerationManifest {
+
+    static final String NAME = "generation-manifest.json";
+
+    /**
+     * Entry every group has for what goes into its schema files besides the definitions of its
+     * types, like the specification version in the description.
+     */
+    static final String SKELETON = "$skeleton";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .enable(SerializationFeature.INDENT_OUTPUT)
+        .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    private GenerationManifest() {}
+
+    /**
+     * @return the recorded hashes, empty when there is no manifest or it can not be read
+     */
+    static Map<String, Map<String, String>> read(Path manifest) {
+        if (!Files.exists(manifest)) {
+            return Collections.emptyMap();
+        }
+        try {
+            return MAPPER.readValue(manifest.toFile(), new TypeReference<Map<String, Map<String, String>>>() {});
+        }
+        catch (IOException e) {
+            // Regenerating everything is always safe
+            return Collections.emptyMap();
+        }
+    }
+
+    static void write(Path manifest, Map<String, Map<String, String>> hashes) throws IOException {
+        Path temp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        MAPPER.writeValue(temp.toFile(), hashes);
+        Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -8,6 +8,8 @@ import org.kohsuke.args4j.Option;
 
 import java.io.File;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 public final class Main {
@@ -45,6 +47,95 @@ public final class Main {
             usage = "Use this flag to include Intrinsic Functions in the schema")
     private Boolean intrinsics;
 
+    @Option(name = "--streaming",
+            usage = "Use this flag to generate definitions while the specification is still being parsed")
+    private Boolean streaming;
+
+    @Option(name = "--cache-dir",
+            usage = "directory to cache downloaded specifications in, cached copies are revalidated with the server")
+    private File cacheDir;
+
+    @Option(name = "--offline",
+            usage = "Use this flag to only use specifications from the cache directory")
+    private Boolean offline;
+
+    @Option(name = "--threads",
+            usage = "number of regions to fetch and generate concurrently")
+    private Integer threads;
+
+    @Option(name = "--intern",
+            usage = "Use this flag to share identical types between the specifications of all regions")
+    private Boolean intern;
+
+    @Option(name = "--snapshot-dir",
+            usage = "directory for binary snapshots of parsed specifications, reused while the specification is unchanged")
+    private File snapshotDir;
+
+    @Option(name = "--filter",
+            usage = "Use this flag to skip types no group includes while parsing the specification")
+    private Boolean filter;
+
+    @Option(name = "--compact",
+            usage = "Use this flag to hold loaded specifications in a compact immutable form")
+    private Boolean compact;
+
+    @Option(name = "--sources",
+            usage = "local directory or zip/tar archive mirroring region specifications, used before the configured URLs")
+    private File sources;
+
+    @Option(name = "--registry",
+            usage = "directory or zip archive of registry provider schemas to generate along with each region")
+    private File registry;
+
+    @Option(name = "--parallelism",
+            usage = "number of threads building the definitions of a specification, 1 builds them sequentially")
+    private Integer parallelism;
+
+    @Option(name = "--shared-fragments",
+            usage = "Use this flag to define DependsOn and the resource attributes once and refer to them with $ref")
+    private Boolean sharedFragments;
+
+    @Option(name = "--deduplicate",
+            usage = "Use this flag to emit structurally identical property type definitions once and refer to them with $ref")
+    private Boolean deduplicate;
+
+    @Option(name = "--prune",
+            usage = "Use this flag to emit only the property types reachable from the resource types of each group")
+    private Boolean prune;
+
+    @Option(name = "--memoize",
+            usage = "Use this flag to reuse definitions of types that are identical across regions")
+    private Boolean memoize;
+
+    @Option(name = "--variants",
+            usage = "Comma separated schema variants to generate in one pass, e.g. draft04,draft07-intrinsics. " +
+                "Schemas go to <region>/<variant>/<group>-spec.json")
+    private String variants;
+
+    @Option(name = "--merge-regions",
+            usage = "Use this flag to generate one schema per group for all regions, each definition lists the regions that have it in x-regions")
+    private Boolean mergeRegions;
+
+    @Option(name = "--region-overlays",
+            usage = "Use this flag with --merge-regions to also write, per region, the definitions that differ from the merged schema")
+    private Boolean regionOverlays;
+
+    @Option(name = "--incremental",
+            usage = "Use this flag to only regenerate the groups whose types changed since the last run, as recorded in a manifest per region")
+    private Boolean incremental;
+
+    @Option(name = "--canonical",
+            usage = "Use this flag to sort properties for byte-stable schemas, record their SHA-256 and size in a content manifest and leave unchanged files untouched")
+    private Boolean canonical;
+
+    @Option(name = "--writer-threads",
+            usage = "number of threads writing schema files on file channels while definitions are built, 0 writes them on the generating thread")
+    private Integer writerThreads;
+
+    @Option(name = "--split",
+            usage = "Use this flag to write each group as a root schema plus a file per service namespace, e.g. <group>/AWS_EC2.json, linked by relative $ref")
+    private Boolean split;
+
     private Main() {}
 
     private void execute() throws Exception {
@@ -69,6 +160,29 @@ public final class Main {
         SchemaDraft draft = this.draft != null ? this.draft : settings.getDraft();
         boolean single = this.single != null ? this.single : settings.getSingle();
         boolean intrinsics = this.intrinsics != null ? this.intrinsics : settings.getIncludeIntrinsics();
+        boolean streaming = this.streaming != null ? this.streaming : settings.getStreaming();
+        File cacheDir = this.cacheDir != null ? this.cacheDir : settings.getCache();
+        boolean offline = this.offline != null ? this.offline : settings.getOffline();
+        int threads = this.threads != null ? this.threads : settings.getThreads();
+        boolean intern = this.intern != null ? this.intern : settings.getIntern();
+        File snapshotDir = this.snapshotDir != null ? this.snapshotDir : settings.getSnapshots();
+        boolean filter = this.filter != null ? this.filter : settings.getFilter();
+        boolean compact = this.compact != null ? this.compact : settings.getCompact();
+        File sources = this.sources != null ? this.sources : settings.getSources();
+        File registry = this.registry != null ? this.registry : settings.getRegistry();
+        int parallelism = this.parallelism != null ? this.parallelism : settings.getParallelism();
+        boolean sharedFragments = this.sharedFragments != null ? this.sharedFragments : settings.getSharedFragments();
+        boolean deduplicate = this.deduplicate != null ? this.deduplicate : settings.getDeduplicate();
+        boolean prune = this.prune != null ? this.prune : settings.getPrune();
+        boolean memoize = this.memoize != null ? this.memoize : settings.getMemoize();
+        List<String> variants = this.variants != null ?
+            Arrays.asList(this.variants.split(",")) : settings.getVariants();
+        boolean mergeRegions = this.mergeRegions != null ? this.mergeRegions : settings.getMergeRegions();
+        boolean regionOverlays = this.regionOverlays != null ? this.regionOverlays : settings.getRegionOverlays();
+        boolean incremental = this.incremental != null ? this.incremental : settings.getIncremental();
+        boolean canonical = this.canonical != null ? this.canonical : settings.getCanonical();
+        int writerThreads = this.writerThreads != null ? this.writerThreads : settings.getWriterThreads();
+        boolean split = this.split != null ? this.split : settings.getSplit();
 
         config = Config.builder(config)
             .withJsonSchema(draft)
@@ -76,6 +190,28 @@ public final class Main {
             .setRegions(regions)
             .isSingleResourceSpec(single)
             .withIntrinsics(intrinsics)
+            .withStreaming(streaming)
+            .withCacheDirectory(cacheDir)
+            .isOffline(offline)
+            .withThreads(threads)
+            .withInterning(intern)
+            .withSnapshotDirectory(snapshotDir)
+            .withGroupFilter(filter)
+            .withCompactModel(compact)
+            .withSpecificationSources(sources)
+            .withRegistrySchemas(registry)
+            .withParallelism(parallelism)
+            .withSharedFragments(sharedFragments)
+            .withDeduplication(deduplicate)
+            .withPruning(prune)
+            .withMemoizedDefinitions(memoize)
+            .withVariants(variants)
+            .withMergedRegions(mergeRegions)
+            .withRegionOverlays(regionOverlays)
+            .withIncrementalGeneration(incremental)
+            .withCanonicalOutput(canonical)
+            .withWriterThreads(writerThreads)
+            .withSplitOutput(split)
             .build();
 
         new Codegen(config).generate();
@@ -0,0 +1,269 @@
+package aws.cfn.codegen.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes files on writer threads, so building definitions overlaps with disk I/O. Each file is
+ * assigned to one writer and handed to it in chunks through the writer's bounded queue, a full
+ * queue blocks the thread producing the file. The writer appends the chunks to a temporary file
+ * on a {@link FileChannel} through its own direct buffer and renames the temporary file in place
+ * atomically once the file is closed. Closing the stream of a file waits for that, so its channel
+ * is closed when close returns; channels of files never closed are closed when the stage is.
+ */
+final class OutputStage implements Closeable {
+
+    static final int CHUNK = 1 << 18;
+    private static final int QUEUE = 32;
+
+    private final List<Writer> writers;
+    private final AtomicInteger next = new AtomicInteger();
+
+    OutputStage(int threads) {
+        writers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Writer writer = new Writer();
+            Thread thread = new Thread(writer, "schema-writer-" + i);
+            thread.setDaemon(true);
+            writer.thread = thread;
+            writers.add(writer);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return a stream writing the file on one of the writer threads
+     */
+    OutputStream open(Path file) {
+        return new ChunkedStream(file, writers.get(Math.floorMod(next.getAndIncrement(), writers.size())));
+    }
+
+    /**
+     * Stops the writers once they have written what is queued, closing the channels of any
+     * files left open and removing their temporary files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Writer each: writers) {
+            each.submit(Writer.STOP);
+        }
+        for (Writer each: writers) {
+            try {
+                each.thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for writer " + each.thread.getName());
+            }
+        }
+    }
+
+    private static final class Writer implements Runnable {
+        private static final Runnable STOP = () -> {};
+
+        private final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(QUEUE);
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK);
+        // Streams with an open channel, only used on the writer thread
+        private final Set<ChunkedStream> open = new HashSet<>();
+        private Thread thread;
+
+        void submit(Runnable task) throws IOException {
+            try {
+                queue.put(task);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted queuing output for " + thread.getName());
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Runnable task = queue.take(); task != STOP; task = queue.take()) {
+                    task.run();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                for (ChunkedStream each: new ArrayList<>(open)) {
+                    each.abandon();
+                }
+            }
+        }
+    }
+
+    private static final class ChunkedStream extends OutputStream {
+        private final Path file;
+        private final Path temp;
+        private final Writer writer;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private byte[] chunk = new byte[CHUNK];
+        private int count;
+        private boolean closed;
+        // Only used on the writer thread
+        private FileChannel channel;
+        private IOException error;
+
+        ChunkedStream(Path file, Writer writer) {
+            this.file = file;
+            this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == chunk.length) {
+                submitChunk();
+            }
+            chunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == chunk.length) {
+                    submitChunk();
+                }
+                int n = Math.min(len, chunk.length - count);
+                System.arraycopy(b, off, chunk, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void submitChunk() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            byte[] data = chunk;
+            int length = count;
+            chunk = new byte[CHUNK];
+            count = 0;
+            writer.submit(() -> append(data, length));
+        }
+
+        private void append(byte[] data, int length) {
+            if (error != null) {
+                return;
+            }
+            try {
+                openChannel();
+                ByteBuffer buffer = writer.buffer;
+                buffer.clear();
+                buffer.put(data, 0, length);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            catch (IOException e) {
+                error = e;
+            }
+        }
+
+        private void openChannel() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                writer.open.add(this);
+            }
+        }
+
+        private void finish() {
+            try {
+                if (error == null) {
+                    openChannel();
+                }
+                closeChannel();
+                if (error != null) {
+                    throw error;
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                done.complete(null);
+            }
+            catch (IOException e) {
+                abandon(e);
+            }
+        }
+
+        private void closeChannel() {
+            if (channel == null) {
+                return;
+            }
+            writer.open.remove(this);
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+            channel = null;
+        }
+
+        private void abandon() {
+            abandon(new IOException("Writing " + file + " did not complete"));
+        }
+
+        /**
+         * Removes the temporary file before failing the file with the error, so it is gone by
+         * the time closing the stream reports the error.
+         */
+        private void abandon(IOException error) {
+            closeChannel();
+            try {
+                Files.deleteIfExists(temp);
+            }
+            catch (IOException e) {
+                // Only a leftover temporary file
+            }
+            done.completeExceptionally(error);
+        }
+
+        /**
+         * Waits for the file to be written and renamed in place.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            submitChunk();
+            writer.submit(this::finish);
+            try {
+                done.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + file);
+            }
+            catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ?
+                    (IOException) e.getCause() : new IOException("Writing " + file + " failed", e.getCause());
+            }
+        }
+    }
+}
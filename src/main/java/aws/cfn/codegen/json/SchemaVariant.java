@@ -0,0 +1,64 @@
+package aws.cfn.codegen.json;
+
+import java.util.Objects;
+
+/**
+ * A flavour of the generated schemas, the JSON schema draft with or without intrinsic functions.
+ * Named like {@code draft04} or {@code draft07-intrinsics}, which is also the directory its
+ * schemas are written to when generating several variants in one pass.
+ */
+public final class SchemaVariant {
+
+    private static final String INTRINSICS = "-intrinsics";
+
+    private final SchemaDraft draft;
+    private final boolean intrinsics;
+
+    public SchemaVariant(SchemaDraft draft, boolean intrinsics) {
+        this.draft = Objects.requireNonNull(draft);
+        this.intrinsics = intrinsics;
+    }
+
+    public static SchemaVariant parse(String name) {
+        boolean intrinsics = name.endsWith(INTRINSICS);
+        String draft = intrinsics ? name.substring(0, name.length() - INTRINSICS.length()) : name;
+        try {
+            return new SchemaVariant(SchemaDraft.valueOf(draft), intrinsics);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown schema variant " + name +
+                ", expecting a draft like draft07 optionally followed by " + INTRINSICS);
+        }
+    }
+
+    public SchemaDraft getDraft() {
+        return draft;
+    }
+
+    public boolean isIntrinsics() {
+        return intrinsics;
+    }
+
+    public String getName() {
+        return draft.name() + (intrinsics ? INTRINSICS : "");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SchemaVariant)) {
+            return false;
+        }
+        SchemaVariant other = (SchemaVariant) o;
+        return draft == other.draft && intrinsics == other.intrinsics;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(draft, intrinsics);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,295 @@
+package aws.cfn.codegen.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes one group schema file. The rendered {@link Skeleton} is copied around the definitions,
+ * which are streamed into it entry by entry, so a file never exists in memory as a whole.
+ * Definition values are serialized once by the caller with a generator from
+ * {@link #valueGenerator} and the same bytes are handed to the writer of every group that has
+ * them.
+ * <p>
+ * The layout is the same as serializing the group definitions as one pretty printed object
+ * and splicing its content into the template.
+ */
+final class SchemaWriter implements DefinitionsWriter {
+
+    static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final String TEMPLATE = "Schema.template";
+    private static final String INTRINSICS = "Intrinsics.json";
+    private static final byte[] FIRST_ENTRY = "\n  ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NEXT_ENTRY = ",\n  ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NAME_SEPARATOR = "\" : ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END_ENTRIES = "\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Pretty printer for values nested inside the definitions object.
+     */
+    private static final class NestedPrettyPrinter extends DefaultPrettyPrinter {
+        private static final long serialVersionUID = 1L;
+
+        NestedPrettyPrinter(int nesting) {
+            _nesting = nesting;
+        }
+
+        @Override
+        public DefaultPrettyPrinter createInstance() {
+            return new NestedPrettyPrinter(_nesting);
+        }
+    }
+
+    /**
+     * The parts of a schema file around the definitions of its group: the template prologue,
+     * intrinsics included, and epilogue. Shared by every group of a region.
+     */
+    static final class Skeleton {
+        /**
+         * A bare object of definitions, as region overlays are.
+         */
+        static final Skeleton OBJECT = new Skeleton(
+            "{".getBytes(StandardCharsets.UTF_8), "}\n".getBytes(StandardCharsets.UTF_8));
+
+        /**
+         * An object with just definitions, as the namespace files of split schemas are.
+         */
+        static final Skeleton DEFINITIONS = new Skeleton(
+            "{\n  \"definitions\" : {".getBytes(StandardCharsets.UTF_8),
+            "  }\n}\n".getBytes(StandardCharsets.UTF_8));
+
+        private final byte[] prologue;
+        private final byte[] epilogue;
+
+        private Skeleton(byte[] prologue, byte[] epilogue) {
+            this.prologue = prologue;
+            this.epilogue = epilogue;
+        }
+
+        /**
+         * @return the skeleton with the description, assembled from the cached segments
+         */
+        static Skeleton of(SchemaDraft draft, boolean intrinsics, String description) throws IOException {
+            Segments segments;
+            try {
+                segments = SEGMENTS.computeIfAbsent(Arrays.asList(draft, intrinsics), ign -> {
+                    try {
+                        return Segments.render(draft, intrinsics);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            ByteArrayOutputStream epilogue = new ByteArrayOutputStream(
+                segments.beforeDescription.length + segments.afterDescription.length + 128);
+            epilogue.write(segments.beforeDescription);
+            write(epilogue, escape(description));
+            epilogue.write(segments.afterDescription);
+            return new Skeleton(segments.prologue, epilogue.toByteArray());
+        }
+    }
+
+    /**
+     * Schema.template split into static byte segments for a draft, with or without intrinsics.
+     * Rendered once per process, only the description varies between regions.
+     */
+    private static final class Segments {
+        private final byte[] prologue;
+        private final byte[] beforeDescription;
+        private final byte[] afterDescription;
+
+        private Segments(byte[] prologue, byte[] beforeDescription, byte[] afterDescription) {
+            this.prologue = prologue;
+            this.beforeDescription = beforeDescription;
+            this.afterDescription = afterDescription;
+        }
+
+        static Segments render(SchemaDraft draft, boolean intrinsics) throws IOException {
+            String template = load(TEMPLATE);
+            int intrinsicsAt = template.indexOf("{{{intrinsics}}}");
+            int resourcesAt = template.indexOf("{{{resources}}}");
+            int descriptionAt = template.indexOf("{{description}}", resourcesAt);
+            if (intrinsicsAt < 0 || resourcesAt < intrinsicsAt || descriptionAt < 0) {
+                throw new IOException(TEMPLATE + " does not have intrinsics, resources and description placeholders");
+            }
+            ByteArrayOutputStream prologue = new ByteArrayOutputStream(intrinsics ? 1 << 16 : 1 << 12);
+            write(prologue, template.substring(0, intrinsicsAt).replace("{{{draft}}}", draft.getLocation()));
+            if (intrinsics) {
+                prologue.write(intrinsics());
+                write(prologue, ",");
+            }
+            write(prologue, template.substring(intrinsicsAt + "{{{intrinsics}}}".length(), resourcesAt));
+            return new Segments(prologue.toByteArray(),
+                template.substring(resourcesAt + "{{{resources}}}".length(), descriptionAt)
+                    .getBytes(StandardCharsets.UTF_8),
+                template.substring(descriptionAt + "{{description}}".length())
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final Map<List<Object>, Segments> SEGMENTS = new ConcurrentHashMap<>();
+    private static volatile byte[] intrinsics;
+
+    /**
+     * @return the intrinsics definitions laid out as entries of the definitions object, rendered
+     * from Intrinsics.json on first use
+     */
+    private static byte[] intrinsics() throws IOException {
+        byte[] rendered = intrinsics;
+        if (rendered == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+            writeIntrinsics(out);
+            rendered = out.toByteArray();
+            intrinsics = rendered;
+        }
+        return rendered;
+    }
+
+    private final OutputStream out;
+    private final Skeleton skeleton;
+    private final Set<String> names = new HashSet<>();
+    private int entries;
+
+    /**
+     * Writes the schema to the stream, which is closed along with the writer.
+     */
+    SchemaWriter(OutputStream stream, Skeleton skeleton) throws IOException {
+        this.skeleton = skeleton;
+        this.out = new BufferedOutputStream(stream, 1 << 16);
+        try {
+            out.write(skeleton.prologue);
+        }
+        catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a generator that lays out a value of the definitions object
+     */
+    static JsonGenerator valueGenerator(OutputStream stream) throws IOException {
+        JsonGenerator generator = FACTORY.createGenerator(stream, JsonEncoding.UTF8);
+        generator.setPrettyPrinter(new NestedPrettyPrinter(1));
+        return generator;
+    }
+
+    @Override
+    public void definition(String name, byte[] value) throws IOException {
+        entry(name, value);
+        names.add(name);
+    }
+
+    @Override
+    public boolean has(String name) {
+        return names.contains(name);
+    }
+
+    private void entry(String name, byte[] value) throws IOException {
+        entry(out, entries++ == 0, name, value);
+    }
+
+    private static void entry(OutputStream out, boolean first, String name, byte[] value) throws IOException {
+        out.write(first ? FIRST_ENTRY : NEXT_ENTRY);
+        out.write('"');
+        out.write(JsonStringEncoder.getInstance().quoteAsUTF8(name));
+        out.write(NAME_SEPARATOR);
+        out.write(value);
+    }
+
+    private static void writeIntrinsics(OutputStream out) throws IOException {
+        try (InputStream stream = resource(INTRINSICS);
+             JsonParser parser = FACTORY.createParser(stream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException(INTRINSICS + " is not a JSON object");
+            }
+            boolean first = true;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                ByteArrayOutputStream value = new ByteArrayOutputStream();
+                try (JsonGenerator generator = valueGenerator(value)) {
+                    generator.copyCurrentStructure(parser);
+                }
+                entry(out, first, name, value.toByteArray());
+                first = false;
+            }
+        }
+        out.write(END_ENTRIES);
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write(END_ENTRIES);
+            out.write(skeleton.epilogue);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static InputStream resource(String name) throws IOException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        loader = loader == null ? SchemaWriter.class.getClassLoader() : loader;
+        InputStream stream = loader.getResourceAsStream(name);
+        if (stream == null) {
+            throw new IOException("Can not find " + name);
+        }
+        return stream;
+    }
+
+    private static String load(String name) throws IOException {
+        try (InputStream stream = resource(name)) {
+            return new String(ByteStreams.toByteArray(stream), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * HTML escaping, as the template's {@code {{description}}} tag had from Mustache.
+     */
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char each: value.toCharArray()) {
+            switch (each) {
+                case '&': escaped.append("&amp;"); break;
+                case '<': escaped.append("&lt;"); break;
+                case '>': escaped.append("&gt;"); break;
+                case '"': escaped.append("&quot;"); break;
+                case '\'': escaped.append("&#39;"); break;
+                case '`': escaped.append("&#96;"); break;
+                case '=': escaped.append("&#61;"); break;
+                default: escaped.append(each);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,198 @@
+package aws.cfn.codegen.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes a group schema as a root schema plus a file per service namespace, e.g.
+ * {@code all-spec.json} with {@code all/AWS_EC2.json} and {@code all/AWS_S3.json}, so editors
+ * only load the namespaces a template uses. Definitions of resource and property types go to the
+ * file of their namespace, everything else stays in the root. References between the files are
+ * relative, each {@code #/definitions/} reference is rewritten for the file it ends up in.
+ */
+final class SplitSchemaWriter implements DefinitionsWriter {
+
+    interface Opener {
+        OutputStream open(Path file) throws IOException;
+    }
+
+    private static final byte[] REF = "\"#/definitions/".getBytes(StandardCharsets.UTF_8);
+
+    private final String group;
+    private final String rootName;
+    private final SchemaWriter root;
+    private final Path directory;
+    private final Opener opener;
+    private final Map<String, SchemaWriter> namespaces = new TreeMap<>();
+    private final Set<String> names = new HashSet<>();
+
+    /**
+     * @param group the name of the group, also the directory of its namespace files
+     * @param rootName the file name of the root schema, next to the directory
+     */
+    SplitSchemaWriter(String group, String rootName, SchemaWriter root, Path directory, Opener opener) {
+        this.group = group;
+        this.rootName = rootName;
+        this.root = root;
+        this.directory = directory;
+        this.opener = opener;
+    }
+
+    /**
+     * @return the service namespace of the definition like AWS_EC2 for AWS_EC2_VPC or
+     * AWS_EC2_VPC_Tag, null for definitions of the root such as Tag or Expression
+     */
+    static String namespace(String defnName) {
+        int first = defnName.indexOf('_');
+        int second = first < 0 ? -1 : defnName.indexOf('_', first + 1);
+        return second < 0 ? null : defnName.substring(0, second);
+    }
+
+    @Override
+    public void definition(String name, byte[] value) throws IOException {
+        String namespace = namespace(name);
+        byte[] relocated = relocate(value, namespace);
+        if (namespace == null) {
+            root.definition(name, relocated);
+        }
+        else {
+            SchemaWriter writer = namespaces.get(namespace);
+            if (writer == null) {
+                writer = new SchemaWriter(opener.open(directory.resolve(namespace + ".json")),
+                    SchemaWriter.Skeleton.DEFINITIONS);
+                namespaces.put(namespace, writer);
+            }
+            writer.definition(name, relocated);
+        }
+        names.add(name);
+    }
+
+    @Override
+    public boolean has(String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * @return the value with each reference made relative to the file of the namespace, the
+     * root for null
+     */
+    private byte[] relocate(byte[] value, String from) {
+        ByteArrayOutputStream out = null;
+        int copied = 0;
+        for (int at = indexOf(value, 0); at >= 0; at = indexOf(value, at + REF.length)) {
+            int start = at + REF.length;
+            int end = start;
+            while (end < value.length && value[end] != '"') {
+                end++;
+            }
+            String target = new String(value, start, end - start, StandardCharsets.UTF_8);
+            String file = file(from, namespace(target));
+            if (file.isEmpty()) {
+                continue;
+            }
+            if (out == null) {
+                out = new ByteArrayOutputStream(value.length + 256);
+            }
+            out.write(value, copied, at + 1 - copied);
+            byte[] prefix = file.getBytes(StandardCharsets.UTF_8);
+            out.write(prefix, 0, prefix.length);
+            copied = at + 1;
+        }
+        if (out == null) {
+            return value;
+        }
+        out.write(value, copied, value.length - copied);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the relative location of the file holding the namespace as seen from the file of
+     * another, empty when they are the same file
+     */
+    private String file(String from, String to) {
+        if (Objects.equals(from, to)) {
+            return "";
+        }
+        if (to == null) {
+            return "../" + rootName;
+        }
+        return from == null ? group + "/" + to + ".json" : to + ".json";
+    }
+
+    private static int indexOf(byte[] value, int from) {
+        outer:
+        for (int i = from; i <= value.length - REF.length; i++) {
+            for (int j = 0; j < REF.length; j++) {
+                if (value[i + j] != REF[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Deletes the namespace files of the directory other than the named ones, left from schemas
+     * having namespaces they no longer have.
+     */
+    static void removeStale(Path directory, Set<String> files) throws IOException {
+        try (DirectoryStream<Path> namespaces = Files.newDirectoryStream(directory, "*.json")) {
+            for (Path each: namespaces) {
+                String name = each.getFileName().toString();
+                if (!files.contains(name) && !name.equals(ContentManifest.NAME)) {
+                    Files.delete(each);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the namespace files before the root, then deletes the namespace files of the
+     * directory this schema does not have.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (SchemaWriter each: namespaces.values()) {
+            try {
+                each.close();
+            }
+            catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+                else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        try {
+            root.close();
+        }
+        catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+            else {
+                error.addSuppressed(e);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        Set<String> files = new HashSet<>();
+        namespaces.keySet().forEach(each -> files.add(each + ".json"));
+        removeStale(directory, files);
+    }
+}
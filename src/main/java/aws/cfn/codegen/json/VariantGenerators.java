@@ -0,0 +1,142 @@
+package aws.cfn.codegen.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes a definition for every schema variant in one walk of the model. Content the variants
+ * share goes to all generators alike, {@link #each} writes what differs per variant.
+ */
+final class VariantGenerators implements Closeable {
+
+    interface VariantEmitter {
+        void emit(JsonGenerator generator, SchemaVariant variant) throws IOException;
+    }
+
+    private final List<SchemaVariant> variants;
+    private final List<JsonGenerator> generators;
+    private final List<ByteArrayOutputStream> buffers;
+
+    VariantGenerators(List<SchemaVariant> variants, List<JsonGenerator> generators) {
+        this(variants, generators, Collections.emptyList());
+    }
+
+    private VariantGenerators(List<SchemaVariant> variants,
+                              List<JsonGenerator> generators,
+                              List<ByteArrayOutputStream> buffers) {
+        this.variants = variants;
+        this.generators = generators;
+        this.buffers = buffers;
+    }
+
+    /**
+     * @return generators laying out a value of the definitions object into a buffer per variant
+     */
+    static VariantGenerators buffered(List<SchemaVariant> variants) throws IOException {
+        List<JsonGenerator> generators = new ArrayList<>(variants.size());
+        List<ByteArrayOutputStream> buffers = new ArrayList<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+            buffers.add(buffer);
+            generators.add(SchemaWriter.valueGenerator(buffer));
+        }
+        return new VariantGenerators(variants, generators, buffers);
+    }
+
+    /**
+     * @return the serialized value of each variant, in the order of the variants
+     */
+    List<byte[]> toByteArrays() throws IOException {
+        List<byte[]> values = new ArrayList<>(buffers.size());
+        for (int i = 0; i < buffers.size(); i++) {
+            generators.get(i).flush();
+            values.add(buffers.get(i).toByteArray());
+        }
+        return values;
+    }
+
+    void each(VariantEmitter emitter) throws IOException {
+        for (int i = 0; i < generators.size(); i++) {
+            emitter.emit(generators.get(i), variants.get(i));
+        }
+    }
+
+    void writeStartObject() throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeStartObject();
+        }
+    }
+
+    void writeEndObject() throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeEndObject();
+        }
+    }
+
+    void writeStartArray() throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeStartArray();
+        }
+    }
+
+    void writeEndArray() throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeEndArray();
+        }
+    }
+
+    void writeFieldName(String name) throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeFieldName(name);
+        }
+    }
+
+    void writeObjectFieldStart(String name) throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeObjectFieldStart(name);
+        }
+    }
+
+    void writeArrayFieldStart(String name) throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeArrayFieldStart(name);
+        }
+    }
+
+    void writeString(String value) throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeString(value);
+        }
+    }
+
+    void writeStringField(String name, String value) throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeStringField(name, value);
+        }
+    }
+
+    void writeBooleanField(String name, boolean value) throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeBooleanField(name, value);
+        }
+    }
+
+    void writeNumberField(String name, int value) throws IOException {
+        for (JsonGenerator each: generators) {
+            each.writeNumberField(name, value);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (JsonGenerator each: generators) {
+            each.close();
+        }
+    }
+}
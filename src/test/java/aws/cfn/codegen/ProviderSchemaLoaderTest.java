@@ -0,0 +1,133 @@
+package aws.cfn.codegen;
+
+import aws.cfn.codegen.json.Codegen;
+import aws.cfn.codegen.json.Config;
+import aws.cfn.codegen.json.GroupSpec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ProviderSchemaLoaderTest {
+
+    private static final String QUEUE = "My::Sample::Queue";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CfnSpecification load(Path schemas) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            return new ProviderSchemaLoader(executor).load(schemas);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConversion() throws IOException {
+        Path dir = folder.newFolder("registry").toPath();
+        Files.copy(Paths.get("src/test/java/aws/cfn/codegen/provider-schema.json"), dir.resolve("queue.json"));
+        // Broken schemas are left out without failing the others
+        Files.write(dir.resolve("broken.json"), "{\"description\": \"no type name\"}".getBytes(StandardCharsets.UTF_8));
+
+        CfnSpecification registry = load(dir);
+        assertEquals(1, registry.getResourceTypes().size());
+        ResourceType queue = registry.getResourceTypes().get(QUEUE);
+        assertEquals("https://example.com/my-queue", queue.getDocumentation());
+
+        Map<String, PropertyType> props = queue.getProperties();
+        assertEquals("String", props.get("QueueName").getPrimitiveType());
+        assertEquals("Immutable", props.get("QueueName").getUpdateType());
+        assertTrue(props.get("QueueName").getRequired());
+        assertEquals("Mutable", props.get("Fifo").getUpdateType());
+        assertEquals("Integer", props.get("DelaySeconds").getPrimitiveType());
+        assertEquals("Double", props.get("Ratio").getPrimitiveType());
+        assertEquals("String", props.get("DeadLetterTarget").getPrimitiveType());
+        assertEquals("List", props.get("Tags").getType());
+        assertEquals(QUEUE + ".Tag", props.get("Tags").getItemType());
+        assertFalse(props.get("Tags").getDuplicatesAllowed());
+        assertEquals("Map", props.get("Labels").getType());
+        assertEquals("String", props.get("Labels").getPrimitiveItemType());
+        assertEquals(QUEUE + ".Redrive", props.get("Redrive").getType());
+        assertEquals(QUEUE + ".Node", props.get("Tree").getType());
+        assertEquals("Json", props.get("Policy").getPrimitiveType());
+        assertEquals("Json", props.get("Choice").getPrimitiveType());
+        assertFalse(props.containsKey("Arn"));
+        assertEquals("String", queue.getAttributes().get("Arn").getPrimitiveType());
+
+        Map<String, ResourceType> propertyTypes = registry.getPropertyTypes();
+        assertTrue(propertyTypes.get(QUEUE + ".Tag").getProperties().get("Key").getRequired());
+        assertEquals(QUEUE + ".Node", propertyTypes.get(QUEUE + ".Node").getProperties().get("Children").getItemType());
+        assertEquals("Integer",
+            propertyTypes.get(QUEUE + ".Redrive").getProperties().get("MaxReceiveCount").getPrimitiveType());
+        assertFalse(propertyTypes.containsKey(QUEUE + ".Arn"));
+        registry.validate();
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        CfnSpecification spec = new SpecificationLoader().loadSpecification(
+            Paths.get("src/test/java/aws/cfn/codegen/spec.json").toUri().toURL());
+        CfnSpecification registry = load(Paths.get("src/test/java/aws/cfn/codegen/provider-schema.json"));
+
+        CfnSpecification merged = ProviderSchemaLoader.merge(spec, registry);
+        assertEquals(spec.getResourceSpecificationVersion(), merged.getResourceSpecificationVersion());
+        assertEquals(spec.getResourceTypes().size() + 1, merged.getResourceTypes().size());
+        assertTrue(merged.getResourceTypes().containsKey(QUEUE));
+        assertTrue(merged.getPropertyTypes().containsKey("Tag"));
+        assertTrue(merged.getPropertyTypes().containsKey(QUEUE + ".Tag"));
+        assertFalse(spec.getResourceTypes().containsKey(QUEUE));
+        merged.validate();
+        // The queue's own Tag, not the top level one of the specification
+        assertEquals(new HashSet<>(Arrays.asList(QUEUE + ".Tag", QUEUE + ".Redrive", QUEUE + ".Node")),
+            ReferenceGraph.of(merged).reachable(Collections.singletonList(QUEUE)));
+    }
+
+    private JsonNode generate(Path output, boolean prune) throws Exception {
+        Path dir = folder.newFolder().toPath();
+        Files.copy(Paths.get("src/test/java/aws/cfn/codegen/provider-schema.json"), dir.resolve("queue.json"));
+        Config config = Config.builder()
+            .withRegionSpec("test", Paths.get("src/test/java/aws/cfn/codegen/spec.json").toUri())
+            .setRegions(Collections.singleton("test"))
+            .withOutputDirectory(output.toFile())
+            .withRegistrySchemas(dir.toFile())
+            .withPruning(prune)
+            .withGroup("thirdparty", GroupSpec.includesOnly("thirdparty", "My::.*"))
+            .build();
+        new Codegen(config).generate();
+        return new ObjectMapper().readTree(output.resolve("test/thirdparty-spec.json").toFile());
+    }
+
+    @Test
+    public void testGeneratedDefinitionNamedLikeTopLevelType() throws Exception {
+        for (boolean prune: new boolean[] { false, true }) {
+            JsonNode definitions = generate(folder.newFolder().toPath(), prune).path("definitions");
+            assertEquals("#/definitions/My_Sample_Queue_Tag", definitions.path("My_Sample_Queue")
+                .at("/properties/Properties/properties/Tags/items/$ref").asText());
+            assertEquals("#/definitions/My_Sample_Queue_Node", definitions.path("My_Sample_Queue_Node")
+                .at("/properties/Children/items/$ref").asText());
+            JsonNode tag = definitions.path("My_Sample_Queue_Tag");
+            assertEquals("Key", tag.path("required").path(0).asText());
+            assertEquals("Value", tag.path("required").path(1).asText());
+            // The top level Tag is only kept where something refers to it
+            assertEquals(!prune, definitions.has("Tag"));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package aws.cfn.codegen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class SpecSourceTest {
+
+    private static final String SINGLE =
+        "{\"ResourceSpecificationVersion\": \"1.0.0\", \"PropertyTypes\": {}," +
+        " \"ResourceType\": {\"AWS::SQS::Queue\": {\"Properties\": {}}}}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] json;
+
+    public SpecSourceTest() throws IOException {
+        json = Files.readAllBytes(Paths.get("src/test/java/aws/cfn/codegen/spec.json"));
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zip(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void tarEntry(OutputStream out, String name, byte[] content) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        byte[] size = String.format("%011o", content.length).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = '0';
+        out.write(header);
+        out.write(content);
+        out.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static String read(SpecSource source, SpecSource.Stats stats) throws IOException {
+        return new String(source.read(stats).getBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testDecode() throws IOException {
+        String expected = new String(json, StandardCharsets.UTF_8);
+        for (byte[] each: Arrays.asList(json, gzip(json), zip("spec.json", expected))) {
+            try (InputStream stream = SpecSource.decode(new ByteArrayInputStream(each))) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                int read;
+                byte[] buffer = new byte[4096];
+                while ((read = stream.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testSingleResourceCompressed() throws IOException {
+        SpecificationLoader loader = new SpecificationLoader();
+        byte[] plain = SINGLE.getBytes(StandardCharsets.UTF_8);
+        for (byte[] each: Arrays.asList(plain, gzip(plain), zip("single.json", SINGLE))) {
+            SingleCfnSpecification spec = loader.loadSingleResourceSpecification(new ByteArrayInputStream(each));
+            assertEquals("1.0.0", spec.getResourceSpecificationVersion());
+            assertTrue(spec.getResourceType().containsKey("AWS::SQS::Queue"));
+        }
+    }
+
+    @Test
+    public void testDirectoryAndArchives() throws IOException {
+        Path dir = folder.newFolder("mirror").toPath();
+        Files.createDirectories(dir.resolve("us-west-2"));
+        Files.write(dir.resolve("us-east-1.json.gz"), gzip(json));
+        Files.write(dir.resolve("us-west-2").resolve("spec.json"), json);
+
+        SpecSource.Stats stats = new SpecSource.Stats();
+        List<SpecSource> sources = SpecSource.list(dir);
+        assertEquals(Arrays.asList("us-east-1.json.gz", "us-west-2/spec.json"),
+            sources.stream().map(SpecSource::getName).collect(Collectors.toList()));
+        for (SpecSource each: sources) {
+            assertEquals(new String(json, StandardCharsets.UTF_8), read(each, stats));
+        }
+        assertEquals(gzip(json).length + json.length, stats.getBytesRead());
+        assertEquals(2L * json.length, stats.getBytesInflated());
+
+        Path zip = folder.getRoot().toPath().resolve("mirror.zip");
+        Files.write(zip, zip("a.json", "{\"a\": 1}", "b.json", "{\"b\": 2}"));
+        sources = SpecSource.list(zip);
+        assertEquals(2, sources.size());
+        assertEquals("b.json", sources.get(1).getName());
+        assertEquals("{\"b\": 2}", read(sources.get(1), new SpecSource.Stats()));
+
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tarEntry(tar, "us-east-1.json", json);
+        tarEntry(tar, "eu-west-1.json.gz", gzip(json));
+        tar.write(new byte[1024]);
+        for (String name: Arrays.asList("mirror.tar", "mirror.tar.gz")) {
+            Path archive = folder.getRoot().toPath().resolve(name);
+            Files.write(archive, name.endsWith(".gz") ? gzip(tar.toByteArray()) : tar.toByteArray());
+            sources = SpecSource.list(archive);
+            assertEquals(Arrays.asList("us-east-1.json", "eu-west-1.json.gz"),
+                sources.stream().map(SpecSource::getName).collect(Collectors.toList()));
+            for (SpecSource each: sources) {
+                assertEquals(new String(json, StandardCharsets.UTF_8), read(each, new SpecSource.Stats()));
+            }
+        }
+    }
+}
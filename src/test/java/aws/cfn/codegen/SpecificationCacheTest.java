@@ -0,0 +1,104 @@
+package aws.cfn.codegen;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class SpecificationCacheTest {
+
+    private static final String ETAG = "\"14.1.0\"";
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2020 07:28:00 GMT";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private byte[] content;
+    private final List<Integer> responses = new ArrayList<>();
+    private URI location;
+
+    @Before
+    public void start() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(Files.readAllBytes(Paths.get("src/test/java/aws/cfn/codegen/spec.json")));
+        }
+        content = bytes.toByteArray();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/spec.json", exchange -> {
+            String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            String since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+            if (ETAG.equals(etag) || LAST_MODIFIED.equals(since)) {
+                responses.add(304);
+                exchange.sendResponseHeaders(304, -1);
+            }
+            else {
+                responses.add(200);
+                exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content);
+            }
+            exchange.close();
+        });
+        server.start();
+        location = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/spec.json");
+    }
+
+    @After
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRevalidation() throws IOException {
+        File dir = folder.newFolder("cache");
+        SpecificationCache cache = new SpecificationCache(dir, false);
+        assertArrayEquals(content, cache.fetch(location));
+        assertArrayEquals(content, cache.fetch(location));
+        assertEquals(2, responses.size());
+        assertEquals(200, (int) responses.get(0));
+        assertEquals(304, (int) responses.get(1));
+
+        // A fresh instance on the same directory revalidates what is on disk
+        CfnSpecification spec = new SpecificationLoader().loadSpecification(
+            new SpecificationCache(dir, false).open(location));
+        assertEquals("14.1.0", spec.getResourceSpecificationVersion());
+        assertEquals(304, (int) responses.get(2));
+    }
+
+    @Test
+    public void testOffline() throws IOException {
+        File dir = folder.newFolder("cache");
+        try {
+            new SpecificationCache(dir, true).fetch(location);
+            fail("Offline fetch without a cached copy must fail");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        assertTrue(responses.isEmpty());
+
+        new SpecificationCache(dir, false).fetch(location);
+        assertArrayEquals(content, new SpecificationCache(dir, true).fetch(location));
+        assertEquals(1, responses.size());
+    }
+}
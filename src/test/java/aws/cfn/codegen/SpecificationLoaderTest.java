@@ -0,0 +1,242 @@
+package aws.cfn.codegen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class SpecificationLoaderTest {
+
+    private static final String TAG =
+        "\"Tag\": {\"Properties\": {\"Key\": {\"PrimitiveType\": \"String\"}}}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final URL location;
+
+    public SpecificationLoaderTest() throws IOException {
+        location = Paths.get("src/test/java/aws/cfn/codegen/spec.json").toUri().toURL();
+    }
+
+    @Test
+    public void testStreamingMatchesDatabind() throws IOException {
+        CfnSpecification spec = new SpecificationLoader().loadSpecification(location);
+        Map<String, ResourceType> properties = new HashMap<>();
+        Map<String, ResourceType> resources = new HashMap<>();
+        List<String> events = new ArrayList<>();
+        new SpecificationLoader().streamSpecification(location, new SpecificationListener() {
+            @Override
+            public void version(String resourceSpecificationVersion) {
+                events.add(resourceSpecificationVersion);
+            }
+
+            @Override
+            public void propertyType(String name, ResourceType type) {
+                properties.put(name, type);
+            }
+
+            @Override
+            public void propertyTypesDone() {
+                events.add("propertyTypesDone");
+            }
+
+            @Override
+            public void resourceType(String name, ResourceType type) {
+                assertTrue(events.contains("propertyTypesDone"));
+                resources.put(name, type);
+            }
+        });
+
+        assertEquals(spec.getPropertyTypes(), properties);
+        assertEquals(spec.getResourceTypes(), resources);
+        assertTrue(events.contains(spec.getResourceSpecificationVersion()));
+    }
+
+    @Test
+    public void testInterningSharesTypes() throws IOException {
+        SpecificationInterner interner = new SpecificationInterner();
+        CfnSpecification first = new SpecificationLoader(interner).loadSpecification(location);
+        CfnSpecification second = new SpecificationLoader(interner).loadSpecification(location);
+        assertEquals(first, second);
+        second.getResourceTypes().forEach(
+            (name, type) -> assertSame(first.getResourceTypes().get(name), type));
+        // Tag Key and Value share the same shape apart from documentation
+        ResourceType tag = first.getPropertyTypes().get("Tag");
+        assertSame(tag.getProperties().get("Key").getUpdateType(),
+            tag.getProperties().get("Value").getUpdateType());
+    }
+
+    @Test
+    public void testFilteredLoading() throws IOException {
+        CfnSpecification full = new SpecificationLoader().loadSpecification(location);
+        CfnSpecification lambda = new SpecificationLoader().loadSpecification(
+            location.openStream(), name -> name.startsWith("AWS::Lambda"));
+        assertEquals(Collections.singleton("AWS::Lambda::Function"), lambda.getResourceTypes().keySet());
+        assertEquals(full.getPropertyTypes().keySet(), lambda.getPropertyTypeNames());
+        assertEquals(full.getPropertyTypes().get("AWS::Lambda::Function.Code"),
+            lambda.getPropertyTypes().get("AWS::Lambda::Function.Code"));
+        // Skipped property types are only known by name
+        assertFalse(lambda.getPropertyTypes().containsKey("Tag"));
+        assertTrue(lambda.getSkippedPropertyTypes().contains("Tag"));
+        assertFalse(lambda.getSkippedPropertyTypes().contains("AWS::Lambda::Function.Code"));
+        lambda.validate();
+    }
+
+    @Test
+    public void testCompactModel() throws IOException {
+        CfnSpecification spec = new SpecificationLoader().loadSpecification(location);
+        CompactSpecification compact = CompactSpecification.of(spec);
+        CfnSpecification view = compact.asSpecification();
+        assertEquals(spec.getResourceSpecificationVersion(), view.getResourceSpecificationVersion());
+        assertEquals(spec.getPropertyTypes(), view.getPropertyTypes());
+        assertEquals(spec.getResourceTypes(), view.getResourceTypes());
+        assertEquals(new HashMap<>(spec.getResourceTypes()), view.getResourceTypes());
+        assertEquals(new HashMap<>(spec.getResourceTypes()).hashCode(), view.getResourceTypes().hashCode());
+        assertEquals(new HashMap<>(spec.getPropertyTypes()).hashCode(), view.getPropertyTypes().hashCode());
+        for (Map.Entry<String, ResourceType> each: view.getResourceTypes().entrySet()) {
+            assertEquals(new AbstractMap.SimpleEntry<>(each), each);
+            assertEquals(new AbstractMap.SimpleEntry<>(each).hashCode(), each.hashCode());
+        }
+        assertEquals(CompactSpecification.Update.Immutable,
+            compact.getResourceType("AWS::EC2::VPC").getProperty(0).getUpdateType());
+        assertNull(compact.getResourceType("AWS::EC2::Nope"));
+    }
+
+    @Test
+    public void testReferenceGraph() throws IOException {
+        String json = "{\"PropertyTypes\": {" + TAG + ", " +
+            "\"AWS::X::Y.A\": {\"Properties\": {\"B\": {\"Type\": \"List\", \"ItemType\": \"B\"}}}, " +
+            "\"AWS::X::Y.B\": {\"Properties\": {\"Tags\": {\"Type\": \"Map\", \"ItemType\": \"Tag\"}}}, " +
+            "\"AWS::X::Y.C\": {\"Properties\": {\"Key\": {\"PrimitiveType\": \"String\"}}}}, " +
+            "\"ResourceTypes\": {" +
+            "\"AWS::X::Y\": {\"Properties\": {\"A\": {\"Type\": \"A\"}}}, " +
+            "\"AWS::X::Z\": {\"Properties\": {\"Size\": {\"PrimitiveType\": \"Integer\"}}}}}";
+        CfnSpecification spec = new SpecificationLoader().loadSpecification(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        ReferenceGraph graph = ReferenceGraph.of(spec);
+        assertEquals(new HashSet<>(Arrays.asList("AWS::X::Y.A", "AWS::X::Y.B", "Tag")),
+            graph.reachable(Collections.singletonList("AWS::X::Y")));
+        assertEquals(Collections.emptySet(), graph.reachable(Collections.singletonList("AWS::X::Z")));
+        assertTrue(ReferenceGraph.isPropertyTypeName("Tag"));
+        assertTrue(ReferenceGraph.isPropertyTypeName("AWS::X::Y.C"));
+        assertFalse(ReferenceGraph.isPropertyTypeName("AWS::X::Y"));
+    }
+
+    @Test
+    public void testStructuralHash() throws IOException {
+        CfnSpecification first = new SpecificationLoader().loadSpecification(location);
+        CfnSpecification second = new SpecificationLoader().loadSpecification(location);
+        ResourceType vpc = second.getResourceTypes().get("AWS::EC2::VPC");
+        assertEquals(first.getResourceTypes().get("AWS::EC2::VPC").structuralHash(), vpc.structuralHash());
+        vpc.getProperties().values().iterator().next().setRequired(null);
+        assertNotEquals(first.getResourceTypes().get("AWS::EC2::VPC").structuralHash(), vpc.structuralHash());
+    }
+
+    @Test
+    public void testMergedSpecification() throws IOException {
+        CfnSpecification east = new SpecificationLoader().loadSpecification(location);
+        CfnSpecification west = new SpecificationLoader().loadSpecification(location);
+        CfnSpecification north = new SpecificationLoader().loadSpecification(location);
+        north.setResourceSpecificationVersion("999.0.0");
+        north.getResourceTypes().get("AWS::EC2::VPC").setDocumentation("changed");
+        west.getResourceTypes().remove("AWS::EC2::VPC");
+        Map<String, CfnSpecification> regions = new HashMap<>();
+        regions.put("east", east);
+        regions.put("west", west);
+        regions.put("north", north);
+
+        MergedSpecification merged = MergedSpecification.of(regions);
+        assertEquals("999.0.0", merged.getSpecification().getResourceSpecificationVersion());
+        assertEquals(east.getResourceTypes().keySet(), merged.getSpecification().getResourceTypes().keySet());
+        // east and north disagree on the VPC, the tie goes to east
+        assertEquals(east.getResourceTypes().get("AWS::EC2::VPC"),
+            merged.getSpecification().getResourceTypes().get("AWS::EC2::VPC"));
+        assertEquals(Arrays.asList("east", "north"), new ArrayList<>(merged.getRegions("AWS::EC2::VPC")));
+        assertEquals(Arrays.asList("east", "north", "west"), new ArrayList<>(merged.getRegions("Tag")));
+        assertEquals(Collections.singleton("AWS::EC2::VPC"), merged.getDifferences("north"));
+        assertTrue(merged.getDifferences("east").isEmpty());
+        assertTrue(merged.getRegions("AWS::EC2::Nope").isEmpty());
+    }
+
+    private static String single(String version, String resource, String propertyTypes, String type) {
+        return "{\"ResourceSpecificationVersion\": \"" + version + "\", " +
+            "\"PropertyTypes\": {" + propertyTypes + "}, " +
+            "\"ResourceType\": {\"" + resource + "\": {\"Properties\": {\"Tags\": " +
+            "{\"Type\": \"List\", \"ItemType\": \"" + type + "\"}}}}}";
+    }
+
+    private CfnSpecification loadBatch(Path dir) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            return new SpecificationLoader().loadSingleResourceSpecifications(
+                SpecSource.list(dir), executor, new SpecSource.Stats());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void write(Path dir, String name, String content) throws IOException {
+        Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSingleResourceBatch() throws IOException {
+        Path dir = folder.newFolder("batch").toPath();
+        write(dir, "queue.json", single("10.0.0", "AWS::SQS::Queue", TAG, "Tag"));
+        write(dir, "topic.json", single("9.2.0", "AWS::SNS::Topic", TAG, "Tag"));
+        CfnSpecification merged = loadBatch(dir);
+        assertEquals("10.0.0", merged.getResourceSpecificationVersion());
+        assertEquals(2, merged.getResourceTypes().size());
+        assertEquals(Collections.singleton("Tag"), merged.getPropertyTypes().keySet());
+        merged.validate();
+
+        // Same type name with a different definition
+        write(dir, "table.json", single("10.0.0", "AWS::DynamoDB::Table",
+            "\"Tag\": {\"Properties\": {\"Value\": {\"PrimitiveType\": \"String\"}}}", "Tag"));
+        try {
+            loadBatch(dir);
+            fail("Conflicting Tag definitions");
+        }
+        catch (CfnSpecificationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("queue.json") && e.getMessage().contains("table.json"));
+        }
+    }
+
+    @Test
+    public void testSingleResourceValidation() throws IOException {
+        Path dir = folder.newFolder("invalid").toPath();
+        write(dir, "queue.json", single("10.0.0", "AWS::SQS::Queue", TAG, "Tag"));
+        // Only the second resource type refers to an unknown property type
+        write(dir, "multi.json", "{\"PropertyTypes\": {" + TAG + "}, \"ResourceType\": {" +
+            "\"AWS::SNS::Topic\": {\"Properties\": {}}, " +
+            "\"AWS::SNS::Subscription\": {\"Properties\": {\"Filter\": {\"Type\": \"Policy\"}}}}}");
+        try {
+            loadBatch(dir);
+            fail("Subscription refers to an unknown property type");
+        }
+        catch (CfnSpecificationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("multi.json"));
+        }
+    }
+}
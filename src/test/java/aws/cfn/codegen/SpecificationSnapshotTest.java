@@ -0,0 +1,49 @@
+package aws.cfn.codegen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SpecificationSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        CfnSpecification spec = new SpecificationLoader().loadSpecification(
+            Paths.get("src/test/java/aws/cfn/codegen/spec.json").toUri().toURL());
+        Path file = folder.getRoot().toPath().resolve("spec.snapshot");
+        SpecificationSnapshot.write(spec, file);
+
+        CfnSpecification loaded = SpecificationSnapshot.read(file);
+        assertEquals(spec.getResourceSpecificationVersion(), loaded.getResourceSpecificationVersion());
+        assertEquals(spec.getPropertyTypes(), loaded.getPropertyTypes());
+        assertEquals(spec.getResourceTypes(), loaded.getResourceTypes());
+        assertEquals(new HashMap<>(spec.getResourceTypes()), loaded.getResourceTypes());
+        assertEquals(new HashMap<>(spec.getResourceTypes()).hashCode(), loaded.getResourceTypes().hashCode());
+        assertEquals(new HashMap<>(spec.getPropertyTypes()).hashCode(), loaded.getPropertyTypes().hashCode());
+        for (Map.Entry<String, ResourceType> each: loaded.getResourceTypes().entrySet()) {
+            assertEquals(new AbstractMap.SimpleEntry<>(each), each);
+            assertEquals(new AbstractMap.SimpleEntry<>(each).hashCode(), each.hashCode());
+        }
+        assertTrue(loaded.getPropertyTypes().containsKey("Tag"));
+        assertFalse(loaded.getResourceTypes().containsKey("AWS::EC2::Nope"));
+        assertNull(loaded.getResourceTypes().get("AWS::EC2::Nope"));
+
+        // Property order within a type is kept
+        assertEquals(
+            spec.getResourceTypes().get("AWS::Lambda::Function").getProperties().keySet().toString(),
+            loaded.getResourceTypes().get("AWS::Lambda::Function").getProperties().keySet().toString());
+        loaded.validate();
+    }
+}
@@ -0,0 +1,580 @@
+package aws.cfn.codegen.json;
+
+import aws.cfn.codegen.CfnSpecification;
+import aws.cfn.codegen.ReferenceGraph;
+import aws.cfn.codegen.SpecificationLoader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.Hashing;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class CodegenTest {
+
+    private static final Path SPEC = Paths.get("src/test/java/aws/cfn/codegen/spec.json");
+    private static final String DEFINITIONS_REF = "#/definitions/";
+    private static final Map<String, String> GROUPS = new LinkedHashMap<>();
+    static {
+        GROUPS.put("all", "AWS.*");
+        GROUPS.put("networking", "AWS::EC2.*");
+        // Only the resource type, none of its property types
+        GROUPS.put("lambda", "AWS::Lambda::Function");
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Generates the groups for the specification fixture as region test.
+     *
+     * @return the output directory of the region
+     */
+    private Path generate(UnaryOperator<Config.Builder> settings) throws Exception {
+        Path output = folder.newFolder().toPath();
+        generate(output, Collections.singletonMap("test", SPEC), settings);
+        return output.resolve("test");
+    }
+
+    /**
+     * Generates the groups for the specification of each region into the output directory.
+     *
+     * @return the generator, for its counts
+     */
+    private static Codegen generate(Path output,
+                                    Map<String, Path> regions,
+                                    UnaryOperator<Config.Builder> settings) throws Exception {
+        Config.Builder builder = Config.builder()
+            .setRegions(new LinkedHashSet<>(regions.keySet()))
+            .withOutputDirectory(output.toFile());
+        regions.forEach((region, spec) -> builder.withRegionSpec(region, spec.toUri()));
+        GROUPS.forEach((name, pattern) -> builder.withGroup(name, GroupSpec.includesOnly(name, pattern)));
+        Codegen codegen = new Codegen(settings.apply(builder).build());
+        codegen.generate();
+        return codegen;
+    }
+
+    /**
+     * Writes the specification fixture with the changes applied.
+     */
+    private void writeSpecification(Path file, Consumer<ObjectNode> changes) throws IOException {
+        ObjectNode spec = (ObjectNode) mapper.readTree(SPEC.toFile());
+        changes.accept(spec);
+        mapper.writeValue(file.toFile(), spec);
+    }
+
+    /**
+     * Asserts that both output directories have the same group schema files for the regions.
+     */
+    private static void assertSameSchemas(Path expected, Path actual, String... regions) throws IOException {
+        Map<String, Path> actualFiles = schemaFiles(actual, regions);
+        for (Map.Entry<String, Path> each: schemaFiles(expected, regions).entrySet()) {
+            assertArrayEquals(each.getKey(), Files.readAllBytes(each.getValue()),
+                Files.readAllBytes(actualFiles.get(each.getKey())));
+        }
+    }
+
+    /**
+     * Asserts that two regions of the output directory have the same group schema files.
+     */
+    private static void assertSameRegions(Path output, String expected, String actual) throws IOException {
+        for (String group: GROUPS.keySet()) {
+            String name = group + "-spec.json";
+            assertArrayEquals(name, Files.readAllBytes(output.resolve(expected).resolve(name)),
+                Files.readAllBytes(output.resolve(actual).resolve(name)));
+        }
+    }
+
+    /**
+     * @return the group schema files of the regions, by path relative to the output directory
+     */
+    private static Map<String, Path> schemaFiles(Path output, String... regions) {
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (String region: regions) {
+            for (String group: GROUPS.keySet()) {
+                String name = region + "/" + group + "-spec.json";
+                files.put(name, output.resolve(name));
+            }
+        }
+        return files;
+    }
+
+    private JsonNode definitions(Path region, String group) throws IOException {
+        return mapper.readTree(region.resolve(group + "-spec.json").toFile()).path("definitions");
+    }
+
+    private static Set<String> names(JsonNode object) {
+        Set<String> names = new HashSet<>();
+        object.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    /**
+     * @return the $refs of the schema that do not resolve to one of its definitions
+     */
+    private static Set<String> unresolved(JsonNode schema) {
+        Set<String> unresolved = new HashSet<>();
+        for (JsonNode each: schema.findValues("$ref")) {
+            String ref = each.asText();
+            if (!ref.startsWith(DEFINITIONS_REF) || !schema.path("definitions").has(ref.substring(DEFINITIONS_REF.length()))) {
+                unresolved.add(ref);
+            }
+        }
+        return unresolved;
+    }
+
+    /**
+     * @return a copy of the definition without description keywords
+     */
+    private static JsonNode withoutDescriptions(JsonNode definition) {
+        JsonNode copy = definition.deepCopy();
+        for (JsonNode each: copy.findParents("description")) {
+            if (!each.path("description").isObject()) {
+                ((ObjectNode) each).remove("description");
+            }
+        }
+        return copy;
+    }
+
+    private static String definitionName(String typeName) {
+        String[] parts = typeName.split("\\.");
+        return parts.length > 1 ? parts[0].replace("::", "_") + "_" + parts[1] : typeName;
+    }
+
+    /**
+     * Replaces each $ref to one of the fragments by a copy of the fragment.
+     */
+    private static void inline(JsonNode node, Map<String, JsonNode> fragments) {
+        for (Iterator<Map.Entry<String, JsonNode>> each = node.fields(); each.hasNext();) {
+            Map.Entry<String, JsonNode> field = each.next();
+            JsonNode fragment = fragments.get(field.getValue().path("$ref").asText());
+            if (fragment != null) {
+                field.setValue(fragment.deepCopy());
+            }
+            else {
+                inline(field.getValue(), fragments);
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultOutputMatchesBaseline() throws Exception {
+        Path region = generate(builder -> builder);
+        assertArrayEquals(Files.readAllBytes(Paths.get("src/test/java/aws/cfn/codegen/json/all-spec.json")),
+            Files.readAllBytes(region.resolve("all-spec.json")));
+    }
+
+    @Test
+    public void testStreamingMatchesLoaded() throws Exception {
+        Path loaded = generate(UnaryOperator.identity()).getParent();
+        Path streamed = generate(builder -> builder.withStreaming(true)).getParent();
+        assertSameSchemas(loaded, streamed, "test");
+    }
+
+    @Test
+    public void testFailingRegionDoesNotStopOthers() throws Exception {
+        Path invalid = folder.newFile("invalid.json").toPath();
+        Files.write(invalid, "{\"ResourceTypes\": [".getBytes(StandardCharsets.UTF_8));
+        Map<String, Path> regions = new LinkedHashMap<>();
+        regions.put("east", SPEC);
+        regions.put("invalid", invalid);
+        regions.put("missing", folder.getRoot().toPath().resolve("missing.json"));
+        regions.put("west", SPEC);
+        for (boolean streaming: new boolean[] { false, true }) {
+            Path output = folder.newFolder().toPath();
+            try {
+                generate(output, regions, builder -> builder.withThreads(2).withStreaming(streaming));
+                fail("Generation of the invalid and missing regions fails");
+            }
+            catch (RuntimeException e) {
+                assertEquals("Generation failed for regions [invalid, missing]", e.getMessage());
+                assertEquals(2, e.getSuppressed().length);
+            }
+            assertSameRegions(output, "east", "west");
+            assertFalse(Files.exists(output.resolve("invalid/all-spec.json")));
+            assertFalse(Files.exists(output.resolve("missing/all-spec.json")));
+        }
+    }
+
+    @Test
+    public void testIdenticalSpecificationsGeneratedOnce() throws Exception {
+        Path output = folder.newFolder().toPath();
+        Path other = folder.newFile("other.json").toPath();
+        writeSpecification(other, changes -> changes.put("ResourceSpecificationVersion", "99.0.0"));
+        Map<String, Path> regions = new LinkedHashMap<>();
+        regions.put("east", SPEC);
+        regions.put("other", other);
+        regions.put("west", SPEC);
+        Codegen codegen = generate(output, regions, builder -> builder.withThreads(2));
+        assertEquals(2, codegen.loadedSpecifications());
+
+        assertSameRegions(output, "east", "west");
+        assertEquals("CFN JSON specification generated from version 99.0.0",
+            mapper.readTree(output.resolve("other/all-spec.json").toFile()).path("description").asText());
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        Path sequential = generate(UnaryOperator.identity()).getParent();
+        for (boolean streaming: new boolean[] { false, true }) {
+            Path parallel = generate(builder -> builder.withParallelism(4).withStreaming(streaming)).getParent();
+            assertSameSchemas(sequential, parallel, "test");
+        }
+    }
+
+    @Test
+    public void testSharedFragmentsInline() throws Exception {
+        JsonNode plain = definitions(generate(builder -> builder), "all");
+        ObjectNode shared = (ObjectNode) definitions(generate(builder -> builder.withSharedFragments(true)), "all");
+        Map<String, JsonNode> fragments = new LinkedHashMap<>();
+        for (String each: names(shared)) {
+            if (each.startsWith("resource") && !each.equals("resources")) {
+                fragments.put(DEFINITIONS_REF + each, shared.remove(each));
+            }
+        }
+        assertFalse(fragments.isEmpty());
+        inline(shared, fragments);
+        assertEquals(plain, shared);
+    }
+
+    @Test
+    public void testDeduplicatedDefinitionsAlias() throws Exception {
+        JsonNode plain = definitions(generate(builder -> builder), "all");
+        JsonNode deduplicated = definitions(generate(builder -> builder.withDeduplication(true)), "all");
+        assertEquals(names(plain), names(deduplicated));
+        int aliases = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> each = deduplicated.fields(); each.hasNext();) {
+            Map.Entry<String, JsonNode> definition = each.next();
+            JsonNode ref = definition.getValue().path("$ref");
+            if (definition.getValue().size() == 1 && ref.isTextual()) {
+                // The alias stands for a definition of the same structure
+                JsonNode target = deduplicated.path(ref.asText().substring(DEFINITIONS_REF.length()));
+                assertEquals(withoutDescriptions(plain.get(definition.getKey())), withoutDescriptions(target));
+                aliases++;
+            }
+            else {
+                assertEquals(plain.get(definition.getKey()), definition.getValue());
+            }
+        }
+        // The S3Location of the bucket and of the function
+        assertEquals(1, aliases);
+    }
+
+    @Test
+    public void testPrunedToReachable() throws Exception {
+        CfnSpecification spec = new SpecificationLoader().loadSpecification(SPEC.toUri().toURL());
+        ReferenceGraph graph = ReferenceGraph.of(spec);
+        Path region = generate(builder -> builder.withPruning(true));
+        for (Map.Entry<String, String> group: GROUPS.entrySet()) {
+            List<String> resources = spec.getResourceTypes().keySet().stream()
+                .filter(name -> name.matches(group.getValue()))
+                .collect(Collectors.toList());
+            Set<String> expected = graph.reachable(resources).stream()
+                .map(CodegenTest::definitionName)
+                .collect(Collectors.toSet());
+            JsonNode schema = mapper.readTree(region.resolve(group.getKey() + "-spec.json").toFile());
+            // The property type definitions, leaving out those of the skeleton
+            Set<String> properties = spec.getPropertyTypes().keySet().stream()
+                .map(CodegenTest::definitionName)
+                .filter(schema.path("definitions")::has)
+                .collect(Collectors.toSet());
+            assertEquals(group.getKey(), expected, properties);
+            assertEquals(group.getKey(), Collections.emptySet(), unresolved(schema));
+        }
+    }
+
+    @Test
+    public void testMemoizedDefinitionsReused() throws Exception {
+        Path changed = folder.newFile("changed.json").toPath();
+        writeSpecification(changed, changes -> ((ObjectNode) changes.path("ResourceTypes").path("AWS::Lambda::Function"))
+            .put("Documentation", "changed"));
+        Map<String, Path> regions = new LinkedHashMap<>();
+        regions.put("east", SPEC);
+        regions.put("west", changed);
+        Path plainOutput = folder.newFolder().toPath();
+        Codegen plain = generate(plainOutput, regions, UnaryOperator.identity());
+        Path memoizedOutput = folder.newFolder().toPath();
+        Codegen memoized = generate(memoizedOutput, regions, builder -> builder.withMemoizedDefinitions(true));
+
+        assertSameSchemas(plainOutput, memoizedOutput, "east", "west");
+        assertEquals(plain.builtDefinitions(), memoized.builtDefinitions() + memoized.reusedDefinitions());
+        // The second region only builds the function, the one type it has different
+        assertEquals(plain.builtDefinitions() / 2 + 1, memoized.builtDefinitions());
+        assertEquals("changed", definitions(memoizedOutput.resolve("west"), "lambda")
+            .path("AWS_Lambda_Function").path("description").asText());
+    }
+
+    @Test
+    public void testVariantsMatchSeparateRuns() throws Exception {
+        List<String> variants = Arrays.asList("draft04", "draft04-intrinsics", "draft07", "draft07-intrinsics");
+        List<UnaryOperator<Config.Builder>> modes = Arrays.asList(
+            builder -> builder, builder -> builder.withDeduplication(true).withPruning(true));
+        for (UnaryOperator<Config.Builder> mode: modes) {
+            Path together = generate(builder -> mode.apply(builder).withVariants(variants));
+            for (String each: variants) {
+                SchemaVariant variant = SchemaVariant.parse(each);
+                Path separate = generate(builder ->
+                    mode.apply(builder).withJsonSchema(variant.getDraft()).withIntrinsics(variant.isIntrinsics()));
+                for (String group: GROUPS.keySet()) {
+                    assertArrayEquals(each + " " + group,
+                        Files.readAllBytes(separate.resolve(group + "-spec.json")),
+                        Files.readAllBytes(together.resolve(each).resolve(group + "-spec.json")));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMergedRegions() throws Exception {
+        Path output = folder.newFolder().toPath();
+        Path west = folder.newFile("west.json").toPath();
+        writeSpecification(west, changes -> {
+            ((ObjectNode) changes.path("ResourceTypes")).remove("AWS::S3::Bucket");
+            ((ObjectNode) changes.path("ResourceTypes").path("AWS::Lambda::Function")).put("Documentation", "changed");
+        });
+        Map<String, Path> regions = new LinkedHashMap<>();
+        regions.put("west", west);
+        regions.put("east", SPEC);
+        generate(output, regions, builder -> builder.withMergedRegions(true).withRegionOverlays(true));
+
+        JsonNode definitions = definitions(output, "all");
+        assertEquals("[\"east\"]", definitions.path("AWS_S3_Bucket").path("x-regions").toString());
+        assertEquals("[\"east\",\"west\"]", definitions.path("AWS_EC2_VPC").path("x-regions").toString());
+        assertEquals("[\"east\",\"west\"]", definitions.path("Tag").path("x-regions").toString());
+        // Regions tie on the function, east wins and west gets its own definition as an overlay
+        JsonNode function = definitions.path("AWS_Lambda_Function");
+        assertEquals("[\"east\",\"west\"]", function.path("x-regions").toString());
+        assertNotEquals("changed", function.path("description").asText());
+        JsonNode overlay = mapper.readTree(output.resolve("west-overlay.json").toFile());
+        assertEquals(Collections.singleton("AWS_Lambda_Function"), names(overlay));
+        assertEquals("changed", overlay.path("AWS_Lambda_Function").path("description").asText());
+        assertFalse(Files.exists(output.resolve("east-overlay.json")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegionOverlaysRequireMergedRegions() {
+        Config.builder().withRegionOverlays(true).build();
+    }
+
+    @Test
+    public void testIncrementalRegeneratesChangedGroups() throws Exception {
+        Path output = folder.newFolder().toPath();
+        Path spec = folder.newFile("spec.json").toPath();
+        writeSpecification(spec, changes -> {});
+        Map<String, Path> regions = new LinkedHashMap<>();
+        regions.put("east", spec);
+        regions.put("west", spec);
+        UnaryOperator<Config.Builder> incremental = builder -> builder.withIncrementalGeneration(true);
+        generate(output, regions, incremental);
+        Map<String, Path> files = schemaFiles(output, "east", "west");
+        FileTime generated = FileTime.fromMillis(0);
+        for (Path each: files.values()) {
+            Files.setLastModifiedTime(each, generated);
+        }
+
+        // Only the groups having the function change, in the region copying the output as well
+        writeSpecification(spec, changes -> ((ObjectNode) changes.path("ResourceTypes").path("AWS::Lambda::Function"))
+            .put("Documentation", "changed"));
+        generate(output, regions, incremental);
+        for (Map.Entry<String, Path> each: files.entrySet()) {
+            boolean changed = !each.getKey().endsWith("networking-spec.json");
+            assertEquals(each.getKey(), changed, !generated.equals(Files.getLastModifiedTime(each.getValue())));
+            Files.setLastModifiedTime(each.getValue(), generated);
+        }
+        assertArrayEquals(Files.readAllBytes(output.resolve("east/all-spec.json")),
+            Files.readAllBytes(output.resolve("west/all-spec.json")));
+
+        // Every group has the version in its description
+        writeSpecification(spec, changes -> {
+            ((ObjectNode) changes.path("ResourceTypes").path("AWS::Lambda::Function")).put("Documentation", "changed");
+            changes.put("ResourceSpecificationVersion", "99.0.0");
+        });
+        generate(output, regions, incremental);
+        for (Map.Entry<String, Path> each: files.entrySet()) {
+            assertEquals("CFN JSON specification generated from version 99.0.0",
+                mapper.readTree(each.getValue().toFile()).path("description").asText());
+        }
+    }
+
+    private static void assertSorted(String name, JsonNode properties) {
+        List<String> names = new ArrayList<>(names(properties));
+        Collections.sort(names);
+        List<String> order = new ArrayList<>();
+        properties.fieldNames().forEachRemaining(order::add);
+        assertEquals(name, names, order);
+    }
+
+    @Test
+    public void testCanonicalOutput() throws Exception {
+        UnaryOperator<Config.Builder> canonical = builder -> builder.withCanonicalOutput(true);
+        Path region = generate(canonical);
+        JsonNode definitions = definitions(region, "all");
+        CfnSpecification spec = new SpecificationLoader().loadSpecification(SPEC.toUri().toURL());
+        spec.getResourceTypes().keySet().forEach(name -> assertSorted(name,
+            definitions.path(name.replace("::", "_")).at("/properties/Properties/properties")));
+        spec.getPropertyTypes().keySet().forEach(name -> assertSorted(name,
+            definitions.path(definitionName(name)).path("properties")));
+
+        // The same bytes whichever way they are generated
+        List<UnaryOperator<Config.Builder>> modes = Arrays.asList(
+            builder -> builder,
+            builder -> builder.withStreaming(true),
+            builder -> builder.withParallelism(4).withWriterThreads(2),
+            builder -> builder.withCompactModel(true).withInterning(true));
+        for (UnaryOperator<Config.Builder> mode: modes) {
+            Path again = generate(builder -> canonical.apply(mode.apply(builder)));
+            for (String each: new String[] { "all-spec.json", "networking-spec.json", "lambda-spec.json", "content-manifest.json" }) {
+                assertArrayEquals(each, Files.readAllBytes(region.resolve(each)), Files.readAllBytes(again.resolve(each)));
+            }
+        }
+
+        JsonNode manifest = mapper.readTree(region.resolve("content-manifest.json").toFile());
+        assertEquals(schemaFiles(region.getParent(), "test").size(), manifest.size());
+        for (Path each: schemaFiles(region.getParent(), "test").values()) {
+            byte[] content = Files.readAllBytes(each);
+            JsonNode entry = manifest.path(each.getFileName().toString());
+            assertEquals(Hashing.sha256().hashBytes(content).toString(), entry.path("sha256").asText());
+            assertEquals(content.length, entry.path("size").asLong());
+        }
+    }
+
+    @Test
+    public void testCanonicalOutputSkipsUnchangedFiles() throws Exception {
+        Path output = folder.newFolder().toPath();
+        Map<String, Path> regions = Collections.singletonMap("test", SPEC);
+        UnaryOperator<Config.Builder> canonical = builder -> builder.withCanonicalOutput(true);
+        generate(output, regions, canonical);
+        Map<String, Path> files = schemaFiles(output, "test");
+        Map<String, byte[]> generated = new HashMap<>();
+        FileTime written = FileTime.fromMillis(0);
+        for (Map.Entry<String, Path> each: files.entrySet()) {
+            generated.put(each.getKey(), Files.readAllBytes(each.getValue()));
+            Files.setLastModifiedTime(each.getValue(), written);
+        }
+        // Edited keeping the size, which the manifest still has
+        Path edited = files.get("test/networking-spec.json");
+        byte[] content = Files.readAllBytes(edited);
+        content[content.length - 2] = ' ';
+        Files.write(edited, content);
+        Files.setLastModifiedTime(edited, written);
+
+        generate(output, regions, canonical);
+        for (Map.Entry<String, Path> each: files.entrySet()) {
+            assertArrayEquals(each.getKey(), generated.get(each.getKey()), Files.readAllBytes(each.getValue()));
+            assertEquals(each.getKey(), each.getValue().equals(edited),
+                !written.equals(Files.getLastModifiedTime(each.getValue())));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWriterThreads() {
+        Config.builder().withWriterThreads(-1).build();
+    }
+
+    /**
+     * @return the schema files of the split output of a region, by path relative to it
+     */
+    private static Map<String, Path> splitFiles(Path region) throws IOException {
+        try (Stream<Path> files = Files.walk(region)) {
+            return files
+                .filter(each -> each.toString().endsWith(".json"))
+                .filter(each -> !each.getFileName().toString().endsWith("-manifest.json"))
+                .collect(Collectors.toMap(each -> region.relativize(each).toString(), each -> each,
+                    (first, second) -> first, TreeMap::new));
+        }
+    }
+
+    /**
+     * @return the $refs of the split schema files that do not resolve to a definition of the file
+     * they name, relative to the file having them
+     */
+    private Set<String> unresolvedSplit(Map<String, Path> files) throws IOException {
+        Map<Path, JsonNode> schemas = new HashMap<>();
+        for (Path each: files.values()) {
+            schemas.put(each.normalize(), mapper.readTree(each.toFile()));
+        }
+        Set<String> unresolved = new HashSet<>();
+        for (Map.Entry<Path, JsonNode> each: schemas.entrySet()) {
+            for (JsonNode value: each.getValue().findValues("$ref")) {
+                String ref = value.asText();
+                int fragment = ref.indexOf(DEFINITIONS_REF);
+                JsonNode target = fragment < 0 ? null : fragment == 0 ? each.getValue() :
+                    schemas.get(each.getKey().resolveSibling(ref.substring(0, fragment)).normalize());
+                if (target == null || !target.path("definitions").has(ref.substring(fragment + DEFINITIONS_REF.length()))) {
+                    unresolved.add(each.getKey().getFileName() + ": " + ref);
+                }
+            }
+        }
+        return unresolved;
+    }
+
+    @Test
+    public void testSplitOutputResolves() throws Exception {
+        Path output = folder.newFolder().toPath();
+        Map<String, Path> regions = new LinkedHashMap<>();
+        regions.put("east", SPEC);
+        regions.put("west", SPEC);
+        // Pruned for the lambda group to have the property types of the function
+        generate(output, regions, builder -> builder.withSplitOutput(true).withPruning(true));
+
+        Map<String, Path> east = splitFiles(output.resolve("east"));
+        assertTrue(east.toString(), east.containsKey("networking/AWS_EC2.json"));
+        assertEquals(Collections.emptySet(), unresolvedSplit(east));
+        // The region copying the output has the namespace files as well
+        Map<String, Path> west = splitFiles(output.resolve("west"));
+        assertEquals(east.keySet(), west.keySet());
+        for (Map.Entry<String, Path> each: east.entrySet()) {
+            assertArrayEquals(each.getKey(), Files.readAllBytes(each.getValue()), Files.readAllBytes(west.get(each.getKey())));
+        }
+    }
+
+    @Test
+    public void testSplitOutputRemovesStaleNamespaces() throws Exception {
+        Path output = folder.newFolder().toPath();
+        Map<String, Path> regions = new LinkedHashMap<>();
+        regions.put("east", SPEC);
+        regions.put("west", SPEC);
+        UnaryOperator<Config.Builder> split = builder -> builder.withSplitOutput(true).withCanonicalOutput(true).withPruning(true);
+        generate(output, regions, split);
+        Map<String, Path> generated = splitFiles(output.resolve("east"));
+        for (String region: regions.keySet()) {
+            Files.write(output.resolve(region + "/all/AWS_Gone.json"), "{}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        generate(output, regions, split);
+        for (String region: regions.keySet()) {
+            Path directory = output.resolve(region + "/all");
+            assertEquals(region, generated.keySet(), splitFiles(output.resolve(region)).keySet());
+            assertFalse(region, mapper.readTree(directory.resolve("content-manifest.json").toFile()).has("AWS_Gone.json"));
+            assertEquals(Collections.emptySet(), unresolvedSplit(splitFiles(output.resolve(region))));
+        }
+    }
+}
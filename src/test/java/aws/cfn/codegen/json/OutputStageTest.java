@@ -0,0 +1,99 @@
+package aws.cfn.codegen.json;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class OutputStageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return more than a chunk of content, so some of it is written before the stream is closed
+     */
+    private static byte[] content() {
+        byte[] content = new byte[OutputStage.CHUNK * 2 + 10];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        return content;
+    }
+
+    private static Path temp(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    private static void awaitExists(Path file) throws InterruptedException {
+        for (int i = 0; i < 500 && !Files.exists(file); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(file.toString(), Files.exists(file));
+    }
+
+    @Test
+    public void testFileAppearsOnClose() throws Exception {
+        Path dir = folder.newFolder().toPath();
+        byte[] content = content();
+        try (OutputStage stage = new OutputStage(2)) {
+            Path[] files = { dir.resolve("first.json"), dir.resolve("second.json") };
+            OutputStream[] streams = { stage.open(files[0]), stage.open(files[1]) };
+            for (OutputStream each: streams) {
+                each.write(content, 0, 10);
+                each.write(content, 10, content.length - 10);
+            }
+            awaitExists(temp(files[0]));
+            for (int i = 0; i < files.length; i++) {
+                assertFalse(Files.exists(files[i]));
+                streams[i].close();
+                assertArrayEquals(content, Files.readAllBytes(files[i]));
+                assertFalse(Files.exists(temp(files[i])));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteErrorReachesClose() throws Exception {
+        Path dir = folder.newFolder().toPath();
+        // A non empty directory where the file goes can not be replaced
+        Path file = Files.createDirectory(dir.resolve("taken.json"));
+        Files.createFile(file.resolve("inside"));
+        try (OutputStage stage = new OutputStage(1)) {
+            OutputStream stream = stage.open(file);
+            stream.write(content());
+            try {
+                stream.close();
+                fail("The file can not be moved in place");
+            }
+            catch (IOException e) {
+                assertFalse(Files.exists(temp(file)));
+                assertTrue(Files.exists(file.resolve("inside")));
+            }
+        }
+    }
+
+    @Test
+    public void testCloseRemovesUnclosedFiles() throws Exception {
+        Path dir = folder.newFolder().toPath();
+        Path file = dir.resolve("unclosed.json");
+        Path closed = dir.resolve("closed.json");
+        OutputStage stage = new OutputStage(1);
+        try (OutputStream stream = stage.open(closed)) {
+            stream.write(content());
+        }
+        OutputStream unclosed = stage.open(file);
+        unclosed.write(content());
+        awaitExists(temp(file));
+        stage.close();
+        assertFalse(Files.exists(temp(file)));
+        assertFalse(Files.exists(file));
+        assertTrue(Files.exists(closed));
+    }
+}